@@ -0,0 +1,379 @@
+package network;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+// Kernels on the Vector API. Every loop runs over whole vectors and leaves the remaining elements to the
+// scalar loops. Only referenced by name from Kernels, so the class is never linked without the module, and kept
+// in its own source root, so src compiles without it.
+// The JIT only compiles vector operations to vector instructions when their species is a constant, which is
+// why the vector size is fixed for the whole JVM by static final species.
+final class VectorKernels extends ScalarKernels {
+
+    private static final VectorShape SHAPE = shape(System.getProperty(Kernels.PROPERTY, "vector"));
+    private static final VectorSpecies<Double> DOUBLES = VectorSpecies.of(double.class, SHAPE);
+    private static final VectorSpecies<Float> FLOATS = VectorSpecies.of(float.class, SHAPE);
+    private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class, SHAPE);
+    // Bytes are loaded as vectors of a quarter of the size, which sign extend into one int vector.
+    // 64 bits is the smallest shape, it fills two int vectors of 128 bits.
+    private static final VectorSpecies<Byte> BYTES = VectorSpecies.of(byte.class,
+            VectorShape.forBitSize(Math.max(64, SHAPE.vectorBitSize() / 4)));
+    private static final int PARTS = BYTES.length() / INTS.length();
+    // The pruning statistics of the float kernels are double, a float vector widens into this many double vectors
+    private static final int FLOAT_PARTS = FLOATS.length() / DOUBLES.length();
+
+    // The preferred shape of the hardware, or a smaller one given in bits
+    private static VectorShape shape(String setting) {
+        VectorShape preferred = VectorShape.preferredShape();
+        if (setting.equals("vector")) {
+            return preferred;
+        }
+        int bits = Integer.parseInt(setting);
+        if (bits > preferred.vectorBitSize()) {
+            throw new UnsupportedOperationException("No " + bits + " bit vectors on this hardware");
+        }
+        return VectorShape.forBitSize(bits);
+    }
+
+    @Override
+    public int getVectorBits() {
+        return SHAPE.vectorBitSize();
+    }
+
+    @Override
+    public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        int upper = DOUBLES.loopBound(length);
+        DoubleVector sum = DoubleVector.zero(DOUBLES);
+        for (int i = 0; i < upper; i += DOUBLES.length()) {
+            DoubleVector x = DoubleVector.fromArray(DOUBLES, a, aOffset + i);
+            sum = x.fma(DoubleVector.fromArray(DOUBLES, b, bOffset + i), sum);
+        }
+        return sum.reduceLanes(VectorOperators.ADD) + super.dot(a, aOffset + upper, b, bOffset + upper, length - upper);
+    }
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        int upper = FLOATS.loopBound(length);
+        FloatVector sum = FloatVector.zero(FLOATS);
+        for (int i = 0; i < upper; i += FLOATS.length()) {
+            FloatVector x = FloatVector.fromArray(FLOATS, a, aOffset + i);
+            sum = x.fma(FloatVector.fromArray(FLOATS, b, bOffset + i), sum);
+        }
+        return sum.reduceLanes(VectorOperators.ADD) + super.dot(a, aOffset + upper, b, bOffset + upper, length - upper);
+    }
+
+    @Override
+    public void dot4(double[] weights, int weightOffset, double[] input, int inputOffset, int stride, int length,
+            double[] output, int outputOffset, int outputStride) {
+        int upper = DOUBLES.loopBound(length);
+        int in0 = inputOffset;
+        int in1 = in0 + stride;
+        int in2 = in1 + stride;
+        int in3 = in2 + stride;
+        DoubleVector net0 = DoubleVector.zero(DOUBLES);
+        DoubleVector net1 = net0;
+        DoubleVector net2 = net0;
+        DoubleVector net3 = net0;
+        for (int i = 0; i < upper; i += DOUBLES.length()) {
+            DoubleVector weight = DoubleVector.fromArray(DOUBLES, weights, weightOffset + i);
+            net0 = weight.fma(DoubleVector.fromArray(DOUBLES, input, in0 + i), net0);
+            net1 = weight.fma(DoubleVector.fromArray(DOUBLES, input, in1 + i), net1);
+            net2 = weight.fma(DoubleVector.fromArray(DOUBLES, input, in2 + i), net2);
+            net3 = weight.fma(DoubleVector.fromArray(DOUBLES, input, in3 + i), net3);
+        }
+        super.dot4(weights, weightOffset + upper, input, inputOffset + upper, stride, length - upper, output, outputOffset,
+                outputStride);
+        output[outputOffset] += net0.reduceLanes(VectorOperators.ADD);
+        output[outputOffset + outputStride] += net1.reduceLanes(VectorOperators.ADD);
+        output[outputOffset + 2 * outputStride] += net2.reduceLanes(VectorOperators.ADD);
+        output[outputOffset + 3 * outputStride] += net3.reduceLanes(VectorOperators.ADD);
+    }
+
+    @Override
+    public void dot4(float[] weights, int weightOffset, float[] input, int inputOffset, int stride, int length,
+            float[] output, int outputOffset, int outputStride) {
+        int upper = FLOATS.loopBound(length);
+        int in0 = inputOffset;
+        int in1 = in0 + stride;
+        int in2 = in1 + stride;
+        int in3 = in2 + stride;
+        FloatVector net0 = FloatVector.zero(FLOATS);
+        FloatVector net1 = net0;
+        FloatVector net2 = net0;
+        FloatVector net3 = net0;
+        for (int i = 0; i < upper; i += FLOATS.length()) {
+            FloatVector weight = FloatVector.fromArray(FLOATS, weights, weightOffset + i);
+            net0 = weight.fma(FloatVector.fromArray(FLOATS, input, in0 + i), net0);
+            net1 = weight.fma(FloatVector.fromArray(FLOATS, input, in1 + i), net1);
+            net2 = weight.fma(FloatVector.fromArray(FLOATS, input, in2 + i), net2);
+            net3 = weight.fma(FloatVector.fromArray(FLOATS, input, in3 + i), net3);
+        }
+        super.dot4(weights, weightOffset + upper, input, inputOffset + upper, stride, length - upper, output, outputOffset,
+                outputStride);
+        output[outputOffset] += net0.reduceLanes(VectorOperators.ADD);
+        output[outputOffset + outputStride] += net1.reduceLanes(VectorOperators.ADD);
+        output[outputOffset + 2 * outputStride] += net2.reduceLanes(VectorOperators.ADD);
+        output[outputOffset + 3 * outputStride] += net3.reduceLanes(VectorOperators.ADD);
+    }
+
+    @Override
+    public int dot(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        int upper = BYTES.loopBound(length);
+        IntVector sum = IntVector.zero(INTS);
+        for (int i = 0; i < upper; i += BYTES.length()) {
+            ByteVector x = ByteVector.fromArray(BYTES, a, aOffset + i);
+            ByteVector y = ByteVector.fromArray(BYTES, b, bOffset + i);
+            for (int part = 0; part < PARTS; part++) {
+                sum = sum.add(widen(x, part).mul(widen(y, part)));
+            }
+        }
+        return sum.reduceLanes(VectorOperators.ADD) + super.dot(a, aOffset + upper, b, bOffset + upper, length - upper);
+    }
+
+    @Override
+    public void dot4(byte[] weights, int weightOffset, byte[] input, int inputOffset, int stride, int length,
+            int[] output, int outputOffset, int outputStride) {
+        int upper = BYTES.loopBound(length);
+        int in0 = inputOffset;
+        int in1 = in0 + stride;
+        int in2 = in1 + stride;
+        int in3 = in2 + stride;
+        IntVector net0 = IntVector.zero(INTS);
+        IntVector net1 = net0;
+        IntVector net2 = net0;
+        IntVector net3 = net0;
+        for (int i = 0; i < upper; i += BYTES.length()) {
+            ByteVector weight = ByteVector.fromArray(BYTES, weights, weightOffset + i);
+            ByteVector x0 = ByteVector.fromArray(BYTES, input, in0 + i);
+            ByteVector x1 = ByteVector.fromArray(BYTES, input, in1 + i);
+            ByteVector x2 = ByteVector.fromArray(BYTES, input, in2 + i);
+            ByteVector x3 = ByteVector.fromArray(BYTES, input, in3 + i);
+            for (int part = 0; part < PARTS; part++) {
+                IntVector w = widen(weight, part);
+                net0 = net0.add(w.mul(widen(x0, part)));
+                net1 = net1.add(w.mul(widen(x1, part)));
+                net2 = net2.add(w.mul(widen(x2, part)));
+                net3 = net3.add(w.mul(widen(x3, part)));
+            }
+        }
+        super.dot4(weights, weightOffset + upper, input, inputOffset + upper, stride, length - upper, output, outputOffset,
+                outputStride);
+        output[outputOffset] += net0.reduceLanes(VectorOperators.ADD);
+        output[outputOffset + outputStride] += net1.reduceLanes(VectorOperators.ADD);
+        output[outputOffset + 2 * outputStride] += net2.reduceLanes(VectorOperators.ADD);
+        output[outputOffset + 3 * outputStride] += net3.reduceLanes(VectorOperators.ADD);
+    }
+
+    private static IntVector widen(ByteVector x, int part) {
+        return (IntVector) x.convertShape(VectorOperators.B2I, INTS, part);
+    }
+
+    private static DoubleVector widen(FloatVector x, int part) {
+        return (DoubleVector) x.convertShape(VectorOperators.F2D, DOUBLES, part);
+    }
+
+    @Override
+    public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length) {
+        int upper = DOUBLES.loopBound(length);
+        DoubleVector factor = DoubleVector.broadcast(DOUBLES, alpha);
+        for (int i = 0; i < upper; i += DOUBLES.length()) {
+            DoubleVector sum = DoubleVector.fromArray(DOUBLES, x, xOffset + i)
+                    .fma(factor, DoubleVector.fromArray(DOUBLES, y, yOffset + i));
+            sum.intoArray(y, yOffset + i);
+        }
+        super.axpy(alpha, x, xOffset + upper, y, yOffset + upper, length - upper);
+    }
+
+    @Override
+    public void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length) {
+        int upper = FLOATS.loopBound(length);
+        FloatVector factor = FloatVector.broadcast(FLOATS, alpha);
+        for (int i = 0; i < upper; i += FLOATS.length()) {
+            FloatVector sum = FloatVector.fromArray(FLOATS, x, xOffset + i)
+                    .fma(factor, FloatVector.fromArray(FLOATS, y, yOffset + i));
+            sum.intoArray(y, yOffset + i);
+        }
+        super.axpy(alpha, x, xOffset + upper, y, yOffset + upper, length - upper);
+    }
+
+    @Override
+    public void updateWeights(double step, double[] x, int xOffset, double[] weights, double[] previousWeights,
+            double[] sumOfDeltas, int offset, int length) {
+        int upper = DOUBLES.loopBound(length);
+        for (int i = 0; i < upper; i += DOUBLES.length()) {
+            DoubleVector oldWeight = DoubleVector.fromArray(DOUBLES, weights, offset + i);
+            DoubleVector weight = oldWeight.sub(DoubleVector.fromArray(DOUBLES, x, xOffset + i).mul(step));
+            DoubleVector previousWeight = DoubleVector.fromArray(DOUBLES, previousWeights, offset + i);
+            DoubleVector sum = DoubleVector.fromArray(DOUBLES, sumOfDeltas, offset + i);
+            sum.add(previousWeight.sub(weight).abs()).intoArray(sumOfDeltas, offset + i);
+            oldWeight.intoArray(previousWeights, offset + i);
+            weight.intoArray(weights, offset + i);
+        }
+        super.updateWeights(step, x, xOffset + upper, weights, previousWeights, sumOfDeltas, offset + upper,
+                length - upper);
+    }
+
+    @Override
+    public void updateWeights(float step, float[] x, int xOffset, float[] weights, float[] previousWeights,
+            double[] sumOfDeltas, int offset, int length) {
+        int upper = FLOATS.loopBound(length);
+        for (int i = 0; i < upper; i += FLOATS.length()) {
+            FloatVector oldWeight = FloatVector.fromArray(FLOATS, weights, offset + i);
+            FloatVector weight = oldWeight.sub(FloatVector.fromArray(FLOATS, x, xOffset + i).mul(step));
+            FloatVector delta = FloatVector.fromArray(FLOATS, previousWeights, offset + i).sub(weight).abs();
+            for (int part = 0; part < FLOAT_PARTS; part++) {
+                int index = offset + i + part * DOUBLES.length();
+                DoubleVector.fromArray(DOUBLES, sumOfDeltas, index).add(widen(delta, part)).intoArray(sumOfDeltas, index);
+            }
+            oldWeight.intoArray(previousWeights, offset + i);
+            weight.intoArray(weights, offset + i);
+        }
+        super.updateWeights(step, x, xOffset + upper, weights, previousWeights, sumOfDeltas, offset + upper,
+                length - upper);
+    }
+
+    @Override
+    public void relu(double alpha, double[] x, double[] y, int from, int to, double[] inactiveTransfers) {
+        int upper = from + DOUBLES.loopBound(to - from);
+        for (int i = from; i < upper; i += DOUBLES.length()) {
+            DoubleVector input = DoubleVector.fromArray(DOUBLES, x, i);
+            VectorMask<Double> active = input.compare(VectorOperators.GT, 0);
+            DoubleVector output = input.mul(alpha).blend(input, active);
+            output.intoArray(y, i);
+            if (inactiveTransfers != null) {
+                VectorMask<Double> inactive = output.compare(VectorOperators.LE, Relu.INACTIVE_OUTPUT);
+                DoubleVector.fromArray(DOUBLES, inactiveTransfers, i - from).add(1, inactive)
+                        .intoArray(inactiveTransfers, i - from);
+            }
+        }
+        if (inactiveTransfers == null) {
+            super.relu(alpha, x, y, upper, to, null);
+        } else {
+            // The counts of the remaining elements start at upper - from
+            for (int i = upper; i < to; i++) {
+                y[i] = x[i] > 0 ? x[i] : alpha * x[i];
+                if (y[i] <= Relu.INACTIVE_OUTPUT) {
+                    inactiveTransfers[i - from]++;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void relu(float alpha, float[] x, float[] y, int from, int to, double[] inactiveTransfers) {
+        int upper = from + FLOATS.loopBound(to - from);
+        for (int i = from; i < upper; i += FLOATS.length()) {
+            FloatVector input = FloatVector.fromArray(FLOATS, x, i);
+            FloatVector output = input.mul(alpha).blend(input, input.compare(VectorOperators.GT, 0));
+            output.intoArray(y, i);
+            if (inactiveTransfers != null) {
+                for (int part = 0; part < FLOAT_PARTS; part++) {
+                    int index = i - from + part * DOUBLES.length();
+                    VectorMask<Double> inactive = widen(output, part).compare(VectorOperators.LE, Relu.INACTIVE_OUTPUT);
+                    DoubleVector.fromArray(DOUBLES, inactiveTransfers, index).add(1, inactive)
+                            .intoArray(inactiveTransfers, index);
+                }
+            }
+        }
+        // The counts of the remaining elements start at upper - from
+        for (int i = upper; i < to; i++) {
+            y[i] = x[i] > 0 ? x[i] : alpha * x[i];
+            if (inactiveTransfers != null && y[i] <= Relu.INACTIVE_OUTPUT) {
+                inactiveTransfers[i - from]++;
+            }
+        }
+    }
+
+    @Override
+    public void reluDerivative(double alpha, double[] x, double[] factors, double[] y, int from, int to) {
+        int upper = from + DOUBLES.loopBound(to - from);
+        for (int i = from; i < upper; i += DOUBLES.length()) {
+            VectorMask<Double> active = DoubleVector.fromArray(DOUBLES, x, i).compare(VectorOperators.GT, 0);
+            DoubleVector factor = DoubleVector.fromArray(DOUBLES, factors, i);
+            factor.mul(alpha).blend(factor, active).intoArray(y, i);
+        }
+        super.reluDerivative(alpha, x, factors, y, upper, to);
+    }
+
+    @Override
+    public void reluDerivative(float alpha, float[] x, float[] factors, float[] y, int from, int to) {
+        int upper = from + FLOATS.loopBound(to - from);
+        for (int i = from; i < upper; i += FLOATS.length()) {
+            VectorMask<Float> active = FloatVector.fromArray(FLOATS, x, i).compare(VectorOperators.GT, 0);
+            FloatVector factor = FloatVector.fromArray(FLOATS, factors, i);
+            factor.mul(alpha).blend(factor, active).intoArray(y, i);
+        }
+        super.reluDerivative(alpha, x, factors, y, upper, to);
+    }
+
+    @Override
+    public void sigmoid(double[] x, double[] y, int from, int to, double[] activationSums) {
+        int upper = from + DOUBLES.loopBound(to - from);
+        for (int i = from; i < upper; i += DOUBLES.length()) {
+            sigmoid(DoubleVector.fromArray(DOUBLES, x, i)).intoArray(y, i);
+        }
+        super.sigmoid(x, y, upper, to, null);
+        if (activationSums != null) {
+            count(activationSums, to - from);
+        }
+    }
+
+    // The float version is evaluated in float
+    @Override
+    public void sigmoid(float[] x, float[] y, int from, int to, double[] activationSums) {
+        int upper = from + FLOATS.loopBound(to - from);
+        for (int i = from; i < upper; i += FLOATS.length()) {
+            FloatVector input = FloatVector.fromArray(FLOATS, x, i);
+            FloatVector denominator = input.neg().lanewise(VectorOperators.EXP).add(1);
+            FloatVector.broadcast(FLOATS, 1).div(denominator).intoArray(y, i);
+        }
+        super.sigmoid(x, y, upper, to, null);
+        if (activationSums != null) {
+            count(activationSums, to - from);
+        }
+    }
+
+    // Adds one to the first length activation sums
+    private static void count(double[] activationSums, int length) {
+        int upper = DOUBLES.loopBound(length);
+        for (int i = 0; i < upper; i += DOUBLES.length()) {
+            DoubleVector.fromArray(DOUBLES, activationSums, i).add(1).intoArray(activationSums, i);
+        }
+        for (int i = upper; i < length; i++) {
+            activationSums[i]++;
+        }
+    }
+
+    @Override
+    public void sigmoidDerivative(double[] outputs, double[] factors, double[] y, int from, int to) {
+        int upper = from + DOUBLES.loopBound(to - from);
+        for (int i = from; i < upper; i += DOUBLES.length()) {
+            DoubleVector output = DoubleVector.fromArray(DOUBLES, outputs, i);
+            DoubleVector derivative = output.mul(output.neg().add(1));
+            DoubleVector.fromArray(DOUBLES, factors, i).mul(derivative).intoArray(y, i);
+        }
+        super.sigmoidDerivative(outputs, factors, y, upper, to);
+    }
+
+    @Override
+    public void sigmoidDerivative(float[] outputs, float[] factors, float[] y, int from, int to) {
+        int upper = from + FLOATS.loopBound(to - from);
+        for (int i = from; i < upper; i += FLOATS.length()) {
+            FloatVector output = FloatVector.fromArray(FLOATS, outputs, i);
+            FloatVector derivative = output.mul(output.neg().add(1));
+            FloatVector.fromArray(FLOATS, factors, i).mul(derivative).intoArray(y, i);
+        }
+        super.sigmoidDerivative(outputs, factors, y, upper, to);
+    }
+
+    private static DoubleVector sigmoid(DoubleVector x) {
+        DoubleVector denominator = x.neg().lanewise(VectorOperators.EXP).add(1);
+        return DoubleVector.broadcast(x.species(), 1).div(denominator);
+    }
+}
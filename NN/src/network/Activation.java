@@ -8,4 +8,50 @@ public abstract class Activation implements Serializable {
 
     public abstract double derivative(double x);
 
+    // Derivative at x when output = phi(x) is already known, so functions like Sigmoid need not evaluate phi again
+    public double derivative(double x, double output) {
+        return derivative(x);
+    }
+
+    // Whole layer versions used by the array engines. Subclasses replace the loops with kernels.
+
+    // y[i] = phi(x[i]) for i from from to to, y may be x. With statistics arrays the statistics of Neuron.transfer
+    // are counted in the same pass, element i belongs to neuron i - from: Relu counts its inactive transfers,
+    // every other function adds one to the activation sum.
+    public void apply(double[] x, double[] y, int from, int to, double[] inactiveTransfers, double[] activationSums) {
+        for (int i = from; i < to; i++) {
+            y[i] = phi(x[i]);
+        }
+        if (activationSums != null) {
+            for (int i = from; i < to; i++) {
+                activationSums[i - from]++;
+            }
+        }
+    }
+
+    // y[i] = factors[i] * derivative(x[i], outputs[i]), which turns the errors of a layer into its deltas
+    public void derivative(double[] x, double[] outputs, double[] factors, double[] y, int from, int to) {
+        for (int i = from; i < to; i++) {
+            y[i] = factors[i] * derivative(x[i], outputs[i]);
+        }
+    }
+
+    // Float versions for FloatEngine, the function is evaluated in double and rounded
+    public void apply(float[] x, float[] y, int from, int to, double[] inactiveTransfers, double[] activationSums) {
+        for (int i = from; i < to; i++) {
+            y[i] = (float) phi(x[i]);
+        }
+        if (activationSums != null) {
+            for (int i = from; i < to; i++) {
+                activationSums[i - from]++;
+            }
+        }
+    }
+
+    public void derivative(float[] x, float[] outputs, float[] factors, float[] y, int from, int to) {
+        for (int i = from; i < to; i++) {
+            y[i] = factors[i] * (float) derivative(x[i], outputs[i]);
+        }
+    }
+
 }
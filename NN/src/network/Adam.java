@@ -0,0 +1,55 @@
+package network;
+
+// Adam by Kingma and Ba with moving averages of the gradient and its square. The bias correction of the averages
+// is folded into the rate of every update, as in section 2 of the paper.
+public final class Adam extends Optimizer {
+
+    private final double beta1;
+    private final double beta2;
+    private final double epsilon;
+
+    public Adam() {
+        this.beta1 = 0.9;
+        this.beta2 = 0.999;
+        this.epsilon = 1e-8;
+    }
+
+    public Adam(double beta1, double beta2, double epsilon) throws ParameterException {
+        if (beta1 < 0 || beta1 >= 1 || beta2 < 0 || beta2 >= 1) {
+            throw new ParameterException("The decay rates of Adam have to be at least 0 and below 1.");
+        }
+        if (epsilon <= 0) {
+            throw new ParameterException("Epsilon has to be greater than 0.");
+        }
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        this.epsilon = epsilon;
+    }
+
+    @Override
+    public int getStateSize() {
+        return 2;
+    }
+
+    @Override
+    public double getRate(double learningRate, long update) {
+        return learningRate * Math.sqrt(1 - Math.pow(beta2, update)) / (1 - Math.pow(beta1, update));
+    }
+
+    @Override
+    public void steps(double[] gradients, double[][] state, int from, int to, double rate) {
+        double[] mean = state[0];
+        double[] variance = state[1];
+        for (int i = from; i < to; i++) {
+            double gradient = gradients[i];
+            mean[i] = beta1 * mean[i] + (1 - beta1) * gradient;
+            variance[i] = beta2 * variance[i] + (1 - beta2) * gradient * gradient;
+            gradients[i] = rate * mean[i] / (Math.sqrt(variance[i]) + epsilon);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Adam";
+    }
+}
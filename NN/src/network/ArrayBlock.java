@@ -0,0 +1,274 @@
+package network;
+
+// Layout, pruning bookkeeping and loops shared by LayerBlock and FloatLayerBlock, see LayerBlock for the layout.
+// A is the array type of the weights, biases and the values of the samples, double[] or float[].
+// The loops over rows and samples live here, the subclasses only provide the operations on one row for their array
+// type: dense rows run on the kernels, sparse rows loop over their columns.
+// The pruning statistics are double in both, they are sums over whole epochs.
+abstract class ArrayBlock<A> {
+
+    static final Kernels kernels = Kernels.get();
+
+    final int inputSize;
+    final int size;
+
+    final Activation activationFunction;
+    final boolean relu;
+
+    // null for dense layers
+    final int[] rowStart;
+    final int[] columns;
+    // Ascending indices of the pruned weights of a dense layer, they get no updates. null if none are pruned.
+    final int[] prunedWeights;
+
+    final A weights;
+    final A previousWeights;
+    final double[] sumOfDeltas;
+    final int[] weightUpdates;
+
+    final A biases;
+    final double[] activationSums;
+    final double[] inactiveTransfers;
+
+    // null for plain SGD, which runs on the kernels. The state is aligned with the weights and biases.
+    Optimizer optimizer;
+    double[][] weightState;
+    double[][] biasState;
+
+    // The arrays are allocated by the subclass with getNumberOfWeights elements for the weights and size for the biases
+    ArrayBlock(int inputSize, int size, Activation activationFunction, int[] rowStart, int[] columns,
+            int[] prunedWeights, A weights, A previousWeights, A biases) {
+        this.inputSize = inputSize;
+        this.size = size;
+        this.activationFunction = activationFunction;
+        this.relu = activationFunction instanceof Relu;
+        this.rowStart = rowStart;
+        this.columns = columns;
+        this.prunedWeights = prunedWeights;
+
+        this.weights = weights;
+        this.previousWeights = previousWeights;
+        sumOfDeltas = new double[getNumberOfWeights(inputSize, size, columns)];
+        weightUpdates = new int[size];
+
+        this.biases = biases;
+        activationSums = new double[size];
+        inactiveTransfers = new double[size];
+    }
+
+    static int getNumberOfWeights(int inputSize, int size, int[] columns) {
+        return columns == null ? size * inputSize : columns.length;
+    }
+
+    void setOptimizer(Optimizer optimizer) {
+        this.optimizer = optimizer;
+        weightState = new double[optimizer.getStateSize()][sumOfDeltas.length];
+        biasState = new double[optimizer.getStateSize()][size];
+    }
+
+    boolean isSparse() {
+        return columns != null;
+    }
+
+    int getNumberOfConnections() {
+        return prunedWeights == null ? sumOfDeltas.length : sumOfDeltas.length - prunedWeights.length;
+    }
+
+    // Index of the first weight of the row and the index after its last one
+    int getRowStart(int row) {
+        return columns == null ? row * inputSize : rowStart[row];
+    }
+
+    int getRowEnd(int row) {
+        return columns == null ? (row + 1) * inputSize : rowStart[row + 1];
+    }
+
+    // Copies the weights without the pruned ones to destination and returns the offset after them
+    int getWeights(double[] destination, int offset) {
+        int from = 0;
+        if (prunedWeights != null) {
+            for (int pruned : prunedWeights) {
+                getWeights(from, pruned, destination, offset);
+                offset += pruned - from;
+                from = pruned + 1;
+            }
+        }
+        getWeights(from, sumOfDeltas.length, destination, offset);
+        return offset + sumOfDeltas.length - from;
+    }
+
+    // The reverse of getWeights, pruned weights stay zero
+    int setWeights(double[] source, int offset) {
+        int from = 0;
+        if (prunedWeights != null) {
+            for (int pruned : prunedWeights) {
+                setWeights(from, pruned, source, offset);
+                offset += pruned - from;
+                from = pruned + 1;
+            }
+        }
+        setWeights(from, sumOfDeltas.length, source, offset);
+        return offset + sumOfDeltas.length - from;
+    }
+
+    // Copies the weights from until to to destination starting at offset
+    abstract void getWeights(int from, int to, double[] destination, int offset);
+
+    abstract void setWeights(int from, int to, double[] source, int offset);
+
+    void forward(A input, A activations, A outputs) {
+        forward(1, input, activations, outputs, inactiveTransfers, activationSums);
+    }
+
+    // Matrix times matrix version of forward for a batch of samples stored row after row in input.
+    // Each dense weight row is loaded once for four samples, which keeps the inner loop compute-bound.
+    // The activation statistics are counted into the given arrays, so parallel workers can keep their own.
+    // Without statistics arrays the pass leaves the block unchanged and activations may be the outputs array.
+    void forward(int samples, A input, A activations, A outputs, double[] inactiveTransfers, double[] activationSums) {
+        for (int row = 0; row < size; row++) {
+            int sample = 0;
+            if (columns == null) {
+                for (; sample + 3 < samples; sample += 4) {
+                    dot4(row, input, sample * inputSize, activations, sample * size + row);
+                }
+            }
+            for (; sample < samples; sample++) {
+                dot(row, input, sample * inputSize, activations, sample * size + row);
+            }
+            addBias(row, samples, activations);
+        }
+        if (inactiveTransfers == null) {
+            apply(activations, outputs, 0, samples * size, null, null);
+            return;
+        }
+        // One sample at a time, so element i of a sample belongs to neuron i of the statistics
+        for (int sample = 0; sample < samples; sample++) {
+            apply(activations, outputs, sample * size, (sample + 1) * size, inactiveTransfers, activationSums);
+        }
+    }
+
+    // Dot products of a dense row with four samples that start inputSize apart, written size apart from index
+    abstract void dot4(int row, A input, int inputOffset, A activations, int index);
+
+    // Dot product of the row with the sample at inputOffset, written to activations[index]
+    abstract void dot(int row, A input, int inputOffset, A activations, int index);
+
+    // Adds the bias of the row to its activations of all samples
+    abstract void addBias(int row, int samples, A activations);
+
+    // Activation.apply for the array type
+    abstract void apply(A x, A y, int from, int to, double[] inactiveTransfers, double[] activationSums);
+
+    // Adds the weighted errors of this layer to the errors of the previous layer
+    void propagateError(A errors, A previousErrors) {
+        propagateError(1, errors, previousErrors);
+    }
+
+    void propagateError(int samples, A errors, A previousErrors) {
+        for (int row = 0; row < size; row++) {
+            for (int sample = 0; sample < samples; sample++) {
+                propagateError(row, errors, sample * size + row, previousErrors, sample * inputSize);
+            }
+        }
+    }
+
+    // previousErrors[offset + column] += weight * errors[index] for the weights of the row
+    abstract void propagateError(int row, A errors, int index, A previousErrors, int offset);
+
+    void calcDeltas(A activations, A outputs, A errors, A deltas) {
+        calcDeltas(1, activations, outputs, errors, deltas);
+    }
+
+    void calcDeltas(int samples, A activations, A outputs, A errors, A deltas) {
+        derivative(activations, outputs, errors, deltas, 0, samples * size);
+    }
+
+    // Activation.derivative for the array type
+    abstract void derivative(A x, A outputs, A factors, A y, int from, int to);
+
+    // Sums the weight and bias gradients of a batch, they are applied with applyGradients
+    void accumulateGradients(int samples, A input, A deltas, A weightGradients, A biasGradients) {
+        for (int row = 0; row < size; row++) {
+            for (int sample = 0; sample < samples; sample++) {
+                accumulateGradients(row, deltas, sample * size + row, input, sample * inputSize, weightGradients,
+                        biasGradients);
+            }
+        }
+    }
+
+    // Adds deltas[index] times the sample at inputOffset to the gradients of the row
+    abstract void accumulateGradients(int row, A deltas, int index, A input, int inputOffset, A weightGradients,
+            A biasGradients);
+
+    void addStatistics(double[] inactiveTransfers, double[] activationSums) {
+        for (int row = 0; row < size; row++) {
+            this.inactiveTransfers[row] += inactiveTransfers[row];
+            this.activationSums[row] += activationSums[row];
+            inactiveTransfers[row] = 0;
+            activationSums[row] = 0;
+        }
+    }
+
+    // Applies the mean gradient of a batch and clears the gradients for the next one
+    void applyGradients(double learningRate, int samples, A weightGradients, A biasGradients) {
+        maskGradients(weightGradients);
+        if (optimizer != null) {
+            applySteps(optimizer, learningRate, samples, weightGradients, biasGradients);
+        } else {
+            double rate = learningRate / samples;
+            for (int row = 0; row < size; row++) {
+                applyGradients(row, rate, weightGradients, biasGradients);
+            }
+        }
+        for (int row = 0; row < size; row++) {
+            weightUpdates[row]++;
+        }
+    }
+
+    // Plain SGD step of the row with the summed gradients times rate, clears the gradients of the row
+    abstract void applyGradients(int row, double rate, A weightGradients, A biasGradients);
+
+    // The optimizer turns the mean gradients of the whole block into steps, which are applied to the weights and biases.
+    // Clears the gradients.
+    abstract void applySteps(Optimizer optimizer, double rate, int samples, A weightGradients, A biasGradients);
+
+    // Optimizers other than SGD take the gradients of the sample through the given arrays, which are cleared again
+    void updateWeights(double learningRate, A input, A deltas, A weightGradients, A biasGradients) {
+        if (optimizer == null) {
+            updateWeights(learningRate, input, deltas);
+            return;
+        }
+        accumulateGradients(1, input, deltas, weightGradients, biasGradients);
+        applyGradients(learningRate, 1, weightGradients, biasGradients);
+    }
+
+    void updateWeights(double learningRate, A input, A deltas) {
+        for (int row = 0; row < size; row++) {
+            updateWeights(row, learningRate, input, deltas);
+            weightUpdates[row]++;
+        }
+        if (prunedWeights != null) {
+            // The kernels updated the whole rows
+            for (int pruned : prunedWeights) {
+                clear(weights, pruned, pruned + 1);
+                clear(previousWeights, pruned, pruned + 1);
+                sumOfDeltas[pruned] = 0;
+            }
+        }
+    }
+
+    // Plain SGD step of the row for the single sample in input with the bookkeeping of Connection.setWeight
+    abstract void updateWeights(int row, double learningRate, A input, A deltas);
+
+    // The dense kernels compute gradients for pruned weights too
+    private void maskGradients(A weightGradients) {
+        if (prunedWeights != null) {
+            for (int pruned : prunedWeights) {
+                clear(weightGradients, pruned, pruned + 1);
+            }
+        }
+    }
+
+    // Sets the elements from until to to zero
+    abstract void clear(A array, int from, int to);
+}
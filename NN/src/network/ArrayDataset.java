@@ -0,0 +1,55 @@
+package network;
+
+// Dataset on arrays with one row per sample. The rows are not copied, so reordering them
+// in the given arrays (see Net.shuffleData) reorders the dataset as well.
+public class ArrayDataset implements Dataset {
+
+    private final double[][] input;
+    private final double[][] target;
+
+    public ArrayDataset(double[][] input, double[][] target) {
+        this.input = input;
+        this.target = target;
+    }
+
+    @Override
+    public int size() {
+        return input.length;
+    }
+
+    @Override
+    public int getInputSize() {
+        return input.length == 0 ? 0 : input[0].length;
+    }
+
+    @Override
+    public int getTargetSize() {
+        return target.length == 0 ? 0 : target[0].length;
+    }
+
+    @Override
+    public void getInput(int sample, double[] destination, int offset) {
+        System.arraycopy(input[sample], 0, destination, offset, input[sample].length);
+    }
+
+    @Override
+    public void getTarget(int sample, double[] destination, int offset) {
+        System.arraycopy(target[sample], 0, destination, offset, target[sample].length);
+    }
+
+    @Override
+    public void getInput(int sample, float[] destination, int offset) {
+        double[] row = input[sample];
+        for (int i = 0; i < row.length; i++) {
+            destination[offset + i] = (float) row[i];
+        }
+    }
+
+    @Override
+    public void getTarget(int sample, float[] destination, int offset) {
+        double[] row = target[sample];
+        for (int i = 0; i < row.length; i++) {
+            destination[offset + i] = (float) row[i];
+        }
+    }
+}
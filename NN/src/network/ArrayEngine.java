@@ -0,0 +1,465 @@
+package network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+// Alternative execution engine for Net. The object graph is compiled into contiguous arrays once,
+// training runs on the arrays and the results are written back before the Pruner looks at the graph.
+class ArrayEngine implements Engine {
+
+    final LayerBlock[] blocks;
+    // Number of samples an inference workspace holds
+    static final int INFERENCE_ROWS = 64;
+
+    // null for plain SGD
+    OptimizerState optimizerState;
+
+    final Workspace workspace;
+    private Workspace batchWorkspace;
+    private final ThreadLocal<Workspace> inferenceWorkspaces;
+
+    ArrayEngine(LayerBlock[] blocks) {
+        this.blocks = blocks;
+        this.workspace = new Workspace(blocks);
+        this.inferenceWorkspaces = ThreadLocal.withInitial(() -> new Workspace(blocks, INFERENCE_ROWS, false));
+    }
+
+    static ArrayEngine compile(ArrayList<Layer> layers, Activation hiddenLayerActivation, Activation outputLayerActivation) {
+        return compile(layers, hiddenLayerActivation, outputLayerActivation, null);
+    }
+
+    // The state of the optimizer is copied into the blocks next to the weights, writeBack copies it back
+    static ArrayEngine compile(ArrayList<Layer> layers, Activation hiddenLayerActivation, Activation outputLayerActivation,
+            OptimizerState optimizerState) {
+        LayerBlock[] blocks = new LayerBlock[layers.size() - 1];
+        for (int i = 0; i < blocks.length; i++) {
+            Activation activation = i == blocks.length - 1 ? outputLayerActivation : hiddenLayerActivation;
+            blocks[i] = createBlock(layers.get(i), layers.get(i + 1), activation, indexOf(layers.get(i)));
+            if (optimizerState != null) {
+                blocks[i].setOptimizer(optimizerState.optimizer);
+            }
+        }
+        ArrayEngine engine = new ArrayEngine(blocks);
+        engine.optimizerState = optimizerState;
+        engine.load(layers);
+        return engine;
+    }
+
+    // Copies weights, biases, statistics and the optimizer state of the graph into the blocks, the reverse of
+    // writeBack. The graph must have the structure the blocks were compiled from, Net.reset refills them this way.
+    void load(ArrayList<Layer> layers) {
+        for (int i = 0; i < blocks.length; i++) {
+            LayerBlock block = blocks[i];
+            Layer layer = layers.get(i + 1);
+            IdentityHashMap<Neuron, Integer> columns = indexOf(layers.get(i));
+
+            for (int row = 0; row < block.size; row++) {
+                Neuron node = layer.nodes.get(row);
+                int index = block.isSparse() ? block.rowStart[row] : 0;
+                for (Connection edge : node.incoming) {
+                    Integer column = columns.get(edge.sourceNode);
+                    if (column == null) {
+                        continue;
+                    }
+                    if (!block.isSparse()) {
+                        index = row * block.inputSize + column;
+                    }
+                    block.weights[index] = edge.getWeight();
+                    block.previousWeights[index] = edge.getPreviousWeight();
+                    block.sumOfDeltas[index] = edge.getSumOfDeltas();
+                    block.weightUpdates[row] = edge.getNumberOfWeightUpdates();
+                    if (optimizerState != null) {
+                        for (int k = 0; k < block.weightState.length; k++) {
+                            block.weightState[k][index] = optimizerState.weights[k][edge.index];
+                        }
+                    }
+                    index++;
+                }
+                block.biases[row] = node.getBias();
+                block.activationSums[row] = node.getActivationSum();
+                block.inactiveTransfers[row] = node.getInactiveTransfers();
+                if (optimizerState != null) {
+                    for (int k = 0; k < block.biasState.length; k++) {
+                        block.biasState[k][row] = optimizerState.biases[k][node.index];
+                    }
+                }
+            }
+        }
+    }
+
+    // Below this fraction of its connections a pruned layer is stored sparse. Above it the dense kernels with
+    // their zero weights are faster: a 784x100 block in CSR took 2 to 4 times as long at 50 to 95 percent
+    // density and broke even at 20 to 30 percent.
+    static final double SPARSE_DENSITY = 0.25;
+
+    // A layer that lost most of its connections through pruning is stored sparse, so it only costs the surviving
+    // connections. Otherwise it stays dense with the pruned weights at zero.
+    private static LayerBlock createBlock(Layer previous, Layer layer, Activation activation, IdentityHashMap<Neuron, Integer> columns) {
+        int[] rowStart = new int[layer.nodes.size() + 1];
+        for (int row = 0; row < layer.nodes.size(); row++) {
+            int count = 0;
+            for (Connection edge : layer.nodes.get(row).incoming) {
+                if (columns.containsKey(edge.sourceNode)) {
+                    count++;
+                }
+            }
+            rowStart[row + 1] = rowStart[row] + count;
+        }
+        int numberOfConnections = rowStart[layer.nodes.size()];
+        int numberOfWeights = previous.nodes.size() * layer.nodes.size();
+        if (numberOfConnections == numberOfWeights) {
+            return new LayerBlock(previous.nodes.size(), layer.nodes.size(), activation);
+        }
+        if (numberOfConnections >= SPARSE_DENSITY * numberOfWeights) {
+            return new LayerBlock(previous.nodes.size(), layer.nodes.size(), activation,
+                    getPrunedWeights(previous, layer, columns, numberOfWeights - numberOfConnections));
+        }
+
+        int[] sourceColumns = new int[numberOfConnections];
+        int index = 0;
+        for (Neuron node : layer.nodes) {
+            for (Connection edge : node.incoming) {
+                Integer column = columns.get(edge.sourceNode);
+                if (column != null) {
+                    sourceColumns[index++] = column;
+                }
+            }
+        }
+        return new LayerBlock(previous.nodes.size(), layer.nodes.size(), activation, rowStart, sourceColumns);
+    }
+
+    // Indices of the missing connections in the dense layout, ascending
+    private static int[] getPrunedWeights(Layer previous, Layer layer, IdentityHashMap<Neuron, Integer> columns,
+            int numberOfPrunedWeights) {
+        int inputSize = previous.nodes.size();
+        int[] prunedWeights = new int[numberOfPrunedWeights];
+        boolean[] connected = new boolean[inputSize];
+        int index = 0;
+        for (int row = 0; row < layer.nodes.size(); row++) {
+            Arrays.fill(connected, false);
+            for (Connection edge : layer.nodes.get(row).incoming) {
+                Integer column = columns.get(edge.sourceNode);
+                if (column != null) {
+                    connected[column] = true;
+                }
+            }
+            for (int column = 0; column < inputSize; column++) {
+                if (!connected[column]) {
+                    prunedWeights[index++] = row * inputSize + column;
+                }
+            }
+        }
+        return prunedWeights;
+    }
+
+    // Copies weights, biases and statistics back into the connections and neurons
+    @Override
+    public void writeBack(ArrayList<Layer> layers) {
+        for (int i = 0; i < blocks.length; i++) {
+            LayerBlock block = blocks[i];
+            Layer layer = layers.get(i + 1);
+            IdentityHashMap<Neuron, Integer> columns = indexOf(layers.get(i));
+
+            for (int row = 0; row < block.size; row++) {
+                Neuron node = layer.nodes.get(row);
+                int index = block.isSparse() ? block.rowStart[row] : 0;
+                for (Connection edge : node.incoming) {
+                    Integer column = columns.get(edge.sourceNode);
+                    if (column == null) {
+                        continue;
+                    }
+                    if (!block.isSparse()) {
+                        index = row * block.inputSize + column;
+                    }
+                    edge.restore(block.weights[index], block.previousWeights[index], block.sumOfDeltas[index],
+                            block.weightUpdates[row]);
+                    if (optimizerState != null) {
+                        for (int k = 0; k < block.weightState.length; k++) {
+                            optimizerState.weights[k][edge.index] = block.weightState[k][index];
+                        }
+                    }
+                    index++;
+                }
+                node.setBias(block.biases[row]);
+                node.setActivationSum(block.activationSums[row]);
+                node.setInactiveTransfers(block.inactiveTransfers[row]);
+                if (optimizerState != null) {
+                    for (int k = 0; k < block.biasState.length; k++) {
+                        optimizerState.biases[k][node.index] = block.biasState[k][row];
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void getParameters(double[] parameters) {
+        int offset = 0;
+        for (LayerBlock block : blocks) {
+            offset = block.getWeights(parameters, offset);
+            System.arraycopy(block.biases, 0, parameters, offset, block.size);
+            offset += block.size;
+        }
+    }
+
+    @Override
+    public void setParameters(double[] parameters) {
+        int offset = 0;
+        for (LayerBlock block : blocks) {
+            offset = block.setWeights(parameters, offset);
+            System.arraycopy(parameters, offset, block.biases, 0, block.size);
+            offset += block.size;
+        }
+    }
+
+    @Override
+    public int getNumberOfConnections() {
+        int numberOfConnections = 0;
+        for (LayerBlock block : blocks) {
+            numberOfConnections += block.getNumberOfConnections();
+        }
+        return numberOfConnections;
+    }
+
+    private static IdentityHashMap<Neuron, Integer> indexOf(Layer layer) {
+        IdentityHashMap<Neuron, Integer> index = new IdentityHashMap<>();
+        for (int i = 0; i < layer.nodes.size(); i++) {
+            index.put(layer.nodes.get(i), i);
+        }
+        return index;
+    }
+
+    @Override
+    public double trainSamples(Dataset data, int[] order, double learningRate, ErrorHistory errors, TrainingProfile profile) {
+        double sampleError = 0;
+        for (int sample = 0; sample < data.size(); sample++) {
+            long time = profile == null ? 0 : System.nanoTime();
+            load(workspace, data, order, sample, 1);
+            forward(workspace);
+            if (profile != null) {
+                time = profile.lap(TrainingProfile.Phase.FORWARD, time);
+            }
+            sampleError = calcOutputError(workspace);
+            if (profile != null) {
+                time = profile.lap(TrainingProfile.Phase.OUTPUT_ERROR, time);
+            }
+            backpropagate(workspace);
+            if (profile != null) {
+                time = profile.lap(TrainingProfile.Phase.BACKPROPAGATION, time);
+            }
+            errors.add(sampleError);
+            updateWeights(workspace, learningRate);
+            if (profile != null) {
+                profile.lap(TrainingProfile.Phase.WEIGHT_UPDATE, time);
+            }
+        }
+        return sampleError;
+    }
+
+    @Override
+    public double trainBatches(Dataset data, int[] order, double learningRate, int batchSize, ErrorHistory errors,
+            TrainingProfile profile) {
+        Workspace ws = getBatchWorkspace(batchSize);
+        double sampleError = 0;
+        for (int from = 0; from < data.size(); from += batchSize) {
+            int samples = Math.min(batchSize, data.size() - from);
+            long time = profile == null ? 0 : System.nanoTime();
+            load(ws, data, order, from, samples);
+            trainBatch(ws, samples, learningRate, profile, time);
+            for (int sample = 0; sample < samples; sample++) {
+                errors.add(ws.sampleErrors[sample]);
+            }
+            sampleError = ws.sampleErrors[samples - 1];
+        }
+        return sampleError;
+    }
+
+    @Override
+    public void predict(double[] input, double[] output) {
+        double[] result = infer(getInferenceWorkspace(), input);
+        System.arraycopy(result, 0, output, 0, output.length);
+    }
+
+    @Override
+    public double[] predict(Dataset data, int from, int samples) {
+        return infer(getInferenceWorkspace(), data, from, samples);
+    }
+
+    @Override
+    public double measureError(Dataset data, int from, int samples) {
+        int outputSize = blocks[blocks.length - 1].size;
+        Workspace ws = getInferenceWorkspace();
+        double[] predicted = infer(ws, data, from, samples);
+        double error = 0;
+        for (int sample = 0; sample < samples; sample++) {
+            data.getTarget(from + sample, ws.targets, sample * outputSize);
+            double sampleError = 0;
+            for (int i = sample * outputSize; i < (sample + 1) * outputSize; i++) {
+                sampleError += Math.abs(predicted[i] - ws.targets[i]);
+            }
+            error += sampleError / outputSize;
+        }
+        return error;
+    }
+
+    // Copies samples from data into the workspace, order maps positions to samples and may be null
+    void load(Workspace ws, Dataset data, int[] order, int from, int samples) {
+        int inputSize = blocks[0].inputSize;
+        int outputSize = blocks[blocks.length - 1].size;
+        for (int sample = 0; sample < samples; sample++) {
+            int index = order == null ? from + sample : order[from + sample];
+            data.getInput(index, ws.outputs[0], sample * inputSize);
+            data.getTarget(index, ws.targets, sample * outputSize);
+        }
+    }
+
+    // Forward pass of the single sample loaded into the workspace
+    double[] forward(Workspace ws) {
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i].forward(ws.outputs[i], ws.activations[i], ws.outputs[i + 1]);
+        }
+        return ws.getOutput();
+    }
+
+    // Returns the summed absolute error of the output layer
+    double backward(Workspace ws) {
+        double meanError = calcOutputError(ws);
+        backpropagate(ws);
+        return meanError;
+    }
+
+    // Errors and deltas of the output layer, returns their summed absolute error
+    private double calcOutputError(Workspace ws) {
+        int last = blocks.length - 1;
+        double[] output = ws.getOutput();
+        double[] errors = ws.errors[last];
+        double meanError = 0;
+        for (int node = 0; node < blocks[last].size; node++) {
+            errors[node] = output[node] - ws.targets[node];
+            meanError += Math.abs(errors[node]);
+        }
+        blocks[last].calcDeltas(ws.activations[last], output, errors, ws.deltas[last]);
+        return meanError;
+    }
+
+    // Backpropagate the error to hidden layers
+    private void backpropagate(Workspace ws) {
+        for (int i = blocks.length - 2; i >= 0; i--) {
+            double[] hiddenErrors = ws.errors[i];
+            Arrays.fill(hiddenErrors, 0, blocks[i].size, 0);
+            blocks[i + 1].propagateError(ws.errors[i + 1], hiddenErrors);
+            blocks[i].calcDeltas(ws.activations[i], ws.outputs[i + 1], hiddenErrors, ws.deltas[i]);
+        }
+    }
+
+    // Learning rate of the next update, which counts the updates of the optimizer
+    double nextRate(double learningRate) {
+        return optimizerState == null ? learningRate : optimizerState.nextRate(learningRate);
+    }
+
+    void updateWeights(Workspace ws, double learningRate) {
+        double rate = nextRate(learningRate);
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i].updateWeights(rate, ws.outputs[i], ws.deltas[i], ws.weightGradients[i], ws.biasGradients[i]);
+        }
+    }
+
+    Workspace getInferenceWorkspace() {
+        return inferenceWorkspaces.get();
+    }
+
+    double[] infer(Workspace ws, double[] input) {
+        System.arraycopy(input, 0, ws.outputs[0], 0, blocks[0].inputSize);
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i].forward(1, ws.outputs[i], ws.outputs[i + 1], ws.outputs[i + 1], null, null);
+        }
+        return ws.getOutput();
+    }
+
+    // Forward pass of up to INFERENCE_ROWS samples that does not change the blocks, so it is safe to call
+    // from several threads with their own workspaces. Returns the outputs of the batch row after row.
+    double[] infer(Workspace ws, Dataset data, int from, int samples) {
+        int inputSize = blocks[0].inputSize;
+        for (int sample = 0; sample < samples; sample++) {
+            data.getInput(from + sample, ws.outputs[0], sample * inputSize);
+        }
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i].forward(samples, ws.outputs[i], ws.outputs[i + 1], ws.outputs[i + 1], null, null);
+        }
+        return ws.getOutput();
+    }
+
+    Workspace getBatchWorkspace(int batchSize) {
+        if (batchWorkspace == null || batchWorkspace.rows != batchSize) {
+            batchWorkspace = new Workspace(blocks, batchSize);
+        }
+        return batchWorkspace;
+    }
+
+    // Trains the batch loaded into the workspace with a single weight update.
+    // The summed absolute output error of every sample is stored in ws.sampleErrors.
+    void trainBatch(Workspace ws, int samples, double learningRate) {
+        trainBatch(ws, samples, learningRate, null, 0);
+    }
+
+    // time is the start of the forward pass when the phases are profiled
+    private void trainBatch(Workspace ws, int samples, double learningRate, TrainingProfile profile, long time) {
+        computeGradients(ws, samples, profile, time);
+        time = profile == null ? 0 : System.nanoTime();
+        double rate = nextRate(learningRate);
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i].addStatistics(ws.inactiveTransfers[i], ws.activationSums[i]);
+            blocks[i].applyGradients(rate, samples, ws.weightGradients[i], ws.biasGradients[i]);
+        }
+        if (profile != null) {
+            profile.lap(TrainingProfile.Phase.WEIGHT_UPDATE, time);
+        }
+    }
+
+    // Forward and backward pass of the loaded batch without touching the weights. Gradients and activation
+    // statistics are summed into the workspace, so several workers can share the same blocks.
+    void computeGradients(Workspace ws, int samples) {
+        computeGradients(ws, samples, null, 0);
+    }
+
+    private void computeGradients(Workspace ws, int samples, TrainingProfile profile, long time) {
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i].forward(samples, ws.outputs[i], ws.activations[i], ws.outputs[i + 1], ws.inactiveTransfers[i],
+                    ws.activationSums[i]);
+        }
+        if (profile != null) {
+            time = profile.lap(TrainingProfile.Phase.FORWARD, time);
+        }
+
+        int last = blocks.length - 1;
+        double[] output = ws.getOutput();
+        double[] errors = ws.errors[last];
+        for (int sample = 0; sample < samples; sample++) {
+            double meanError = 0;
+            for (int index = sample * blocks[last].size; index < (sample + 1) * blocks[last].size; index++) {
+                errors[index] = output[index] - ws.targets[index];
+                meanError += Math.abs(errors[index]);
+            }
+            ws.sampleErrors[sample] = meanError;
+        }
+        blocks[last].calcDeltas(samples, ws.activations[last], output, errors, ws.deltas[last]);
+        if (profile != null) {
+            time = profile.lap(TrainingProfile.Phase.OUTPUT_ERROR, time);
+        }
+
+        for (int i = last - 1; i >= 0; i--) {
+            double[] hiddenErrors = ws.errors[i];
+            Arrays.fill(hiddenErrors, 0, samples * blocks[i].size, 0);
+            blocks[i + 1].propagateError(samples, ws.errors[i + 1], hiddenErrors);
+            blocks[i].calcDeltas(samples, ws.activations[i], ws.outputs[i + 1], hiddenErrors, ws.deltas[i]);
+        }
+
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i].accumulateGradients(samples, ws.outputs[i], ws.deltas[i], ws.weightGradients[i], ws.biasGradients[i]);
+        }
+        if (profile != null) {
+            profile.lap(TrainingProfile.Phase.BACKPROPAGATION, time);
+        }
+    }
+}
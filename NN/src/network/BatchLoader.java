@@ -0,0 +1,165 @@
+package network;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Data pipeline stage for training, see Net.useAsyncLoading. A background thread shuffles the sample indices with
+// Fisher-Yates and gathers the samples of the next block into a contiguous buffer while the current block trains.
+// Two blocks alternate between the threads, so the training thread only waits when the loader falls behind.
+// It runs ahead epoch after epoch until it is closed. Blocks are a multiple of the batch size, so training them
+// one after the other gives the same batches as training the whole dataset in the shuffled order.
+final class BatchLoader implements AutoCloseable {
+
+    static final int BLOCK_SAMPLES = 256;
+
+    // Samples copied row after row into one array, the dataset the engines train on
+    static final class Block implements Dataset {
+
+        private final int inputSize;
+        private final int targetSize;
+        private final double[] inputs;
+        private final double[] targets;
+        private int size;
+        private RuntimeException failure;
+
+        Block(int samples, int inputSize, int targetSize) {
+            this.inputSize = inputSize;
+            this.targetSize = targetSize;
+            this.inputs = new double[samples * inputSize];
+            this.targets = new double[samples * targetSize];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int getInputSize() {
+            return inputSize;
+        }
+
+        @Override
+        public int getTargetSize() {
+            return targetSize;
+        }
+
+        @Override
+        public void getInput(int sample, double[] destination, int offset) {
+            System.arraycopy(inputs, sample * inputSize, destination, offset, inputSize);
+        }
+
+        @Override
+        public void getTarget(int sample, double[] destination, int offset) {
+            System.arraycopy(targets, sample * targetSize, destination, offset, targetSize);
+        }
+
+        @Override
+        public void getInput(int sample, float[] destination, int offset) {
+            for (int i = 0; i < inputSize; i++) {
+                destination[offset + i] = (float) inputs[sample * inputSize + i];
+            }
+        }
+
+        @Override
+        public void getTarget(int sample, float[] destination, int offset) {
+            for (int i = 0; i < targetSize; i++) {
+                destination[offset + i] = (float) targets[sample * targetSize + i];
+            }
+        }
+    }
+
+    private final Dataset data;
+    private final boolean shuffle;
+    private final int blockSamples;
+    private final SplittableRandom random;
+    private final int[] order;
+
+    private final BlockingQueue<Block> free = new ArrayBlockingQueue<>(2);
+    private final BlockingQueue<Block> filled = new ArrayBlockingQueue<>(2);
+    private final Thread thread;
+    // Owned by the training thread until the next call of next()
+    private Block current;
+
+    // Without shuffle the samples come in the order of the dataset
+    BatchLoader(Dataset data, int batchSize, boolean shuffle, long seed) {
+        this.data = data;
+        this.shuffle = shuffle;
+        this.blockSamples = batchSize * Math.max(1, BLOCK_SAMPLES / batchSize);
+        this.random = new SplittableRandom(seed);
+        this.order = new int[data.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        for (int i = 0; i < 2; i++) {
+            free.add(new Block(blockSamples, data.getInputSize(), data.getTargetSize()));
+        }
+        this.thread = Thread.ofPlatform().name("batch-loader").daemon().start(this::run);
+    }
+
+    // The next block of the current epoch. An epoch has ceil(size / blockSamples) blocks, the call after its
+    // last block returns the first block of the next epoch. The block is valid until the next call.
+    Block next() {
+        if (current != null) {
+            free.add(current);
+        }
+        try {
+            current = filled.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+        if (current.failure != null) {
+            throw current.failure;
+        }
+        return current;
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                if (shuffle) {
+                    shuffle();
+                }
+                for (int from = 0; from < order.length; from += blockSamples) {
+                    Block block = free.take();
+                    try {
+                        gather(block, from, Math.min(blockSamples, order.length - from));
+                    } catch (RuntimeException ex) {
+                        // Handed to the training thread, which throws it from next()
+                        block.failure = ex;
+                        filled.put(block);
+                        return;
+                    }
+                    filled.put(block);
+                }
+            }
+        } catch (InterruptedException ex) {
+            // Closed
+        }
+    }
+
+    // Fisher-Yates, every permutation equally likely
+    private void shuffle() {
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int temp = order[j];
+            order[j] = order[i];
+            order[i] = temp;
+        }
+    }
+
+    private void gather(Block block, int from, int samples) {
+        for (int sample = 0; sample < samples; sample++) {
+            data.getInput(order[from + sample], block.inputs, sample * block.inputSize);
+            data.getTarget(order[from + sample], block.targets, sample * block.targetSize);
+        }
+        block.size = samples;
+    }
+
+    @Override
+    public void close() {
+        thread.interrupt();
+    }
+}
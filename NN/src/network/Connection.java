@@ -1,7 +1,7 @@
 package network;
 
 import java.io.Serializable;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class Connection implements Serializable {
 
@@ -14,13 +14,23 @@ public class Connection implements Serializable {
     private double sumOfDeltas = 0;
     private int numberOfWeightUpdates = 0;
 
+    // Position in the connections of the net, assigned by the Pruner before every pruning
+    int id;
+    // Position in the net as it was built, which does not change through pruning, see OptimizerState
+    int index;
+
     public Connection(Neuron source, Neuron target) {
+        this(source, target, ThreadLocalRandom.current().nextDouble() * 0.5);
+    }
+
+    // Nets draw the weights of a whole layer from their own seeded Initializer
+    Connection(Neuron source, Neuron target, double weight) {
         this.sourceNode = source;
         this.targetNode = target;
-        weight = new Random().nextDouble() * 0.5;
+        this.weight = weight;
     }
 
-    public Double getWeight() {
+    public double getWeight() {
         return weight;
     }
 
@@ -32,8 +42,28 @@ public class Connection implements Serializable {
         numberOfWeightUpdates++;
     }
 
-    public Double getInstability() {
+    public double getInstability() {
         return sumOfDeltas / numberOfWeightUpdates;
     }
 
+    double getPreviousWeight() {
+        return previousWeight;
+    }
+
+    double getSumOfDeltas() {
+        return sumOfDeltas;
+    }
+
+    int getNumberOfWeightUpdates() {
+        return numberOfWeightUpdates;
+    }
+
+    // Used by the array engine to hand its trained state back to the object graph
+    void restore(double weight, double previousWeight, double sumOfDeltas, int numberOfWeightUpdates) {
+        this.weight = weight;
+        this.previousWeight = previousWeight;
+        this.sumOfDeltas = sumOfDeltas;
+        this.numberOfWeightUpdates = numberOfWeightUpdates;
+    }
+
 }
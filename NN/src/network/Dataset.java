@@ -0,0 +1,34 @@
+package network;
+
+// Read access to samples for training and evaluation, so the data does not have to be held as double[][].
+// Implementations copy the input and target values of a sample into the given array starting at offset.
+public interface Dataset {
+
+    int size();
+
+    int getInputSize();
+
+    int getTargetSize();
+
+    void getInput(int sample, double[] destination, int offset);
+
+    void getTarget(int sample, double[] destination, int offset);
+
+    // Used by nets in float precision. The defaults convert from the double versions through a temporary
+    // array, implementations that store their values more compactly should override them.
+    default void getInput(int sample, float[] destination, int offset) {
+        double[] values = new double[getInputSize()];
+        getInput(sample, values, 0);
+        for (int i = 0; i < values.length; i++) {
+            destination[offset + i] = (float) values[i];
+        }
+    }
+
+    default void getTarget(int sample, float[] destination, int offset) {
+        double[] values = new double[getTargetSize()];
+        getTarget(sample, values, 0);
+        for (int i = 0; i < values.length; i++) {
+            destination[offset + i] = (float) values[i];
+        }
+    }
+}
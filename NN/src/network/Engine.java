@@ -0,0 +1,85 @@
+package network;
+
+import java.util.ArrayList;
+import java.util.stream.IntStream;
+
+// Array representation of a net compiled from the object graph, in double (ArrayEngine) or float
+// precision (FloatEngine). Training runs on the arrays, writeBack hands the result to the graph.
+interface Engine {
+
+    void writeBack(ArrayList<Layer> layers);
+
+    int getNumberOfConnections();
+
+    // Weights and biases block after block, the weights of a block row after row followed by its biases
+    void getParameters(double[] parameters);
+
+    // Replaces weights and biases, the pruning statistics stay as they are
+    void setParameters(double[] parameters);
+
+    // One epoch with an update after every sample, order maps positions to samples and may be null.
+    // Returns the summed absolute output error of the last sample. The phases are timed into profile unless it is null.
+    double trainSamples(Dataset data, int[] order, double learningRate, ErrorHistory errors, TrainingProfile profile);
+
+    // One epoch of mini-batches with one update of the mean gradient per batch
+    double trainBatches(Dataset data, int[] order, double learningRate, int batchSize, ErrorHistory errors,
+            TrainingProfile profile);
+
+    // The methods below leave the engine unchanged and are safe to call from several threads
+
+    void predict(double[] input, double[] output);
+
+    // Predicts up to ArrayEngine.INFERENCE_ROWS samples and returns their outputs row after row.
+    // The array belongs to the calling thread and is overwritten by its next call.
+    double[] predict(Dataset data, int from, int samples);
+
+    // Sum of the mean absolute output errors of up to ArrayEngine.INFERENCE_ROWS samples
+    double measureError(Dataset data, int from, int samples);
+
+    // Mean absolute output error over all samples, measured in parallel chunks. Unless profile is null the samples
+    // are predicted one at a time and the latency of every sample is recorded in it, see measureErrorProfiled.
+    default double measureError(Dataset data, TrainingProfile profile) {
+        // One partial sum per chunk, added up in order so the result does not depend on the scheduling
+        double[] errors = new double[getNumberOfChunks(data.size())];
+        if (profile != null) {
+            measureErrorProfiled(data, errors, profile);
+        } else {
+            IntStream.range(0, errors.length).parallel().forEach(chunk -> {
+                int from = chunk * ArrayEngine.INFERENCE_ROWS;
+                errors[chunk] = measureError(data, from, Math.min(ArrayEngine.INFERENCE_ROWS, data.size() - from));
+            });
+        }
+        double error = 0;
+        for (double chunkError : errors) {
+            error += chunkError;
+        }
+        return error / data.size();
+    }
+
+    // Every worker takes every workers-th chunk and records into its own histogram, which are merged into the
+    // profile at the end, so the workers do not contend for the profile while they are timed
+    private void measureErrorProfiled(Dataset data, double[] errors, TrainingProfile profile) {
+        int workers = Math.max(1, Math.min(errors.length, Runtime.getRuntime().availableProcessors()));
+        LatencyHistogram[] latencies = new LatencyHistogram[workers];
+        IntStream.range(0, workers).parallel().forEach(worker -> {
+            LatencyHistogram histogram = new LatencyHistogram();
+            for (int chunk = worker; chunk < errors.length; chunk += workers) {
+                int from = chunk * ArrayEngine.INFERENCE_ROWS;
+                int to = Math.min(data.size(), from + ArrayEngine.INFERENCE_ROWS);
+                for (int sample = from; sample < to; sample++) {
+                    long startTime = System.nanoTime();
+                    errors[chunk] += measureError(data, sample, 1);
+                    histogram.record(System.nanoTime() - startTime);
+                }
+            }
+            latencies[worker] = histogram;
+        });
+        for (LatencyHistogram histogram : latencies) {
+            profile.addPredictions(histogram);
+        }
+    }
+
+    static int getNumberOfChunks(int numberOfSamples) {
+        return (numberOfSamples + ArrayEngine.INFERENCE_ROWS - 1) / ArrayEngine.INFERENCE_ROWS;
+    }
+}
@@ -0,0 +1,34 @@
+package network;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// JFR event for every epoch of Net.training. Costs nothing unless a recording enables it.
+@Name("network.Epoch")
+@Label("Epoch")
+@Category("Neural Net")
+@Description("One epoch of training including the pruning that follows it")
+class EpochEvent extends Event {
+
+    @Label("Epoch")
+    int epoch;
+
+    @Label("Samples")
+    int samples;
+
+    @Label("Batch Size")
+    int batchSize;
+
+    @Label("Engine")
+    String engine;
+
+    @Label("Output Error")
+    @Description("Summed absolute output error of the last sample divided by the number of outputs")
+    double outputError;
+
+    @Label("Connections")
+    int connections;
+}
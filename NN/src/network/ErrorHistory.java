@@ -0,0 +1,73 @@
+package network;
+
+import java.io.Serializable;
+
+// Output errors of the most recent training samples in a ring buffer of fixed size, so recording an error
+// never allocates, together with a summary of the last finished epoch.
+public class ErrorHistory implements Serializable {
+
+    private final double[] errors;
+    private long numberOfSamples;
+
+    private double epochErrorSum;
+    private int epochSamples;
+    private double lastEpochMeanError;
+    private int epochs;
+
+    ErrorHistory(int capacity) {
+        errors = new double[capacity];
+    }
+
+    void add(double error) {
+        errors[(int) (numberOfSamples % errors.length)] = error;
+        numberOfSamples++;
+        epochErrorSum += error;
+        epochSamples++;
+    }
+
+    void finishEpoch() {
+        lastEpochMeanError = epochSamples == 0 ? 0 : epochErrorSum / epochSamples;
+        epochErrorSum = 0;
+        epochSamples = 0;
+        epochs++;
+    }
+
+    // Forgets everything without reallocating the buffer
+    void clear() {
+        numberOfSamples = 0;
+        epochErrorSum = 0;
+        epochSamples = 0;
+        lastEpochMeanError = 0;
+        epochs = 0;
+    }
+
+    public int getCapacity() {
+        return errors.length;
+    }
+
+    // Number of errors that are still in the buffer
+    public int size() {
+        return (int) Math.min(numberOfSamples, errors.length);
+    }
+
+    // 0 is the oldest error still in the buffer, size() - 1 the one of the last sample
+    public double get(int i) {
+        if (i < 0 || i >= size()) {
+            throw new IndexOutOfBoundsException(i);
+        }
+        return errors[(int) ((numberOfSamples - size() + i) % errors.length)];
+    }
+
+    public long getNumberOfSamples() {
+        return numberOfSamples;
+    }
+
+    // Mean of the summed absolute output errors of all samples of the last epoch
+    public double getLastEpochMeanError() {
+        return lastEpochMeanError;
+    }
+
+    public int getNumberOfEpochs() {
+        return epochs;
+    }
+}
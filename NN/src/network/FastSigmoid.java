@@ -0,0 +1,62 @@
+package network;
+
+// Sigmoid from a lookup table with linear interpolation instead of Math.exp. The table holds the exact
+// values on [-16, 16] in steps of h = 1/64, outside of it the values at the bounds are used.
+// Error bound: linear interpolation is off by at most h^2 / 8 * max|sigmoid''| = 1/32768 * 1/(6 * sqrt(3)) < 2.94e-6,
+// the clamping by at most sigmoid(-16) < 1.13e-7, so phi is within 3e-6 of Sigmoid.phi everywhere.
+// The derivative is computed from the approximated output, so it is within 3e-6 of Sigmoid.derivative as well.
+public final class FastSigmoid extends Activation {
+
+    private static final double RANGE = 16;
+    private static final double STEPS_PER_UNIT = 64;
+    private static final double[] TABLE = createTable();
+
+    private final String name = "FastSigmoid";
+
+    private static double[] createTable() {
+        double[] table = new double[(int) (2 * RANGE * STEPS_PER_UNIT) + 1];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = 1.0 / (1 + Math.exp(-(i / STEPS_PER_UNIT - RANGE)));
+        }
+        return table;
+    }
+
+    @Override
+    public double phi(double x) {
+        if (x >= RANGE) {
+            return TABLE[TABLE.length - 1];
+        }
+        if (x > -RANGE) {
+            double position = (x + RANGE) * STEPS_PER_UNIT;
+            int index = (int) position;
+            return TABLE[index] + (position - index) * (TABLE[index + 1] - TABLE[index]);
+        }
+        // NaN stays NaN like in Sigmoid
+        return x != x ? x : TABLE[0];
+    }
+
+    @Override
+    public double derivative(double x) {
+        return derivative(x, phi(x));
+    }
+
+    @Override
+    public double derivative(double x, double output) {
+        return output * (1 - output);
+    }
+
+    @Override
+    public void derivative(double[] x, double[] outputs, double[] factors, double[] y, int from, int to) {
+        Kernels.get().sigmoidDerivative(outputs, factors, y, from, to);
+    }
+
+    @Override
+    public void derivative(float[] x, float[] outputs, float[] factors, float[] y, int from, int to) {
+        Kernels.get().sigmoidDerivative(outputs, factors, y, from, to);
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+}
@@ -0,0 +1,87 @@
+package network;
+
+// Read-only dataset that stores inputs and targets as float in one flat array each, which takes a quarter
+// of the memory of double[][] rows. Inputs are divided by divisor when they are read, so raw values can be kept.
+// Instances never change, so one of them can be shared by any number of nets and threads.
+public class FloatDataset implements Dataset {
+
+    private final int size;
+    private final int inputSize;
+    private final int targetSize;
+    private final float[] input;
+    private final float[] target;
+    private final double divisor;
+
+    public FloatDataset(int inputSize, int targetSize, float[] input, float[] target, double divisor) {
+        this.size = input.length / inputSize;
+        this.inputSize = inputSize;
+        this.targetSize = targetSize;
+        this.input = input;
+        this.target = target;
+        this.divisor = divisor;
+    }
+
+    public static FloatDataset of(double[][] input, double[][] target) {
+        int inputSize = input.length == 0 ? 0 : input[0].length;
+        int targetSize = target.length == 0 ? 0 : target[0].length;
+        float[] flatInput = new float[input.length * inputSize];
+        float[] flatTarget = new float[target.length * targetSize];
+        for (int sample = 0; sample < input.length; sample++) {
+            for (int i = 0; i < inputSize; i++) {
+                flatInput[sample * inputSize + i] = (float) input[sample][i];
+            }
+            for (int i = 0; i < targetSize; i++) {
+                flatTarget[sample * targetSize + i] = (float) target[sample][i];
+            }
+        }
+        return new FloatDataset(inputSize, targetSize, flatInput, flatTarget, 1);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    @Override
+    public int getTargetSize() {
+        return targetSize;
+    }
+
+    @Override
+    public void getInput(int sample, double[] destination, int offset) {
+        int start = sample * inputSize;
+        for (int i = 0; i < inputSize; i++) {
+            destination[offset + i] = input[start + i] / divisor;
+        }
+    }
+
+    @Override
+    public void getTarget(int sample, double[] destination, int offset) {
+        int start = sample * targetSize;
+        for (int i = 0; i < targetSize; i++) {
+            destination[offset + i] = target[start + i];
+        }
+    }
+
+    @Override
+    public void getInput(int sample, float[] destination, int offset) {
+        int start = sample * inputSize;
+        if (divisor == 1) {
+            System.arraycopy(input, start, destination, offset, inputSize);
+            return;
+        }
+        for (int i = 0; i < inputSize; i++) {
+            destination[offset + i] = (float) (input[start + i] / divisor);
+        }
+    }
+
+    @Override
+    public void getTarget(int sample, float[] destination, int offset) {
+        System.arraycopy(target, sample * targetSize, destination, offset, targetSize);
+    }
+}
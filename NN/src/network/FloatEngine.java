@@ -0,0 +1,240 @@
+package network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Array engine in float precision: weights, activations and samples take half the memory and bandwidth of
+// ArrayEngine. The graph is compiled through ArrayEngine and converted, the summed errors and the pruning
+// statistics are kept in double.
+class FloatEngine implements Engine {
+
+    final FloatLayerBlock[] blocks;
+    // null for plain SGD
+    private OptimizerState optimizerState;
+
+    private final FloatWorkspace workspace;
+    private FloatWorkspace batchWorkspace;
+    private final ThreadLocal<FloatWorkspace> inferenceWorkspaces;
+
+    private FloatEngine(FloatLayerBlock[] blocks) {
+        this.blocks = blocks;
+        this.workspace = new FloatWorkspace(blocks, 1, true);
+        this.inferenceWorkspaces = ThreadLocal.withInitial(() -> new FloatWorkspace(blocks, ArrayEngine.INFERENCE_ROWS, false));
+    }
+
+    static FloatEngine compile(ArrayList<Layer> layers, Activation hiddenLayerActivation, Activation outputLayerActivation,
+            OptimizerState optimizerState) {
+        ArrayEngine engine = ArrayEngine.compile(layers, hiddenLayerActivation, outputLayerActivation, optimizerState);
+        FloatLayerBlock[] blocks = new FloatLayerBlock[engine.blocks.length];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = new FloatLayerBlock(engine.blocks[i]);
+        }
+        FloatEngine floatEngine = new FloatEngine(blocks);
+        floatEngine.optimizerState = optimizerState;
+        return floatEngine;
+    }
+
+    @Override
+    public void writeBack(ArrayList<Layer> layers) {
+        LayerBlock[] doubleBlocks = new LayerBlock[blocks.length];
+        for (int i = 0; i < blocks.length; i++) {
+            doubleBlocks[i] = blocks[i].toLayerBlock();
+        }
+        ArrayEngine engine = new ArrayEngine(doubleBlocks);
+        engine.optimizerState = optimizerState;
+        engine.writeBack(layers);
+    }
+
+    private double nextRate(double learningRate) {
+        return optimizerState == null ? learningRate : optimizerState.nextRate(learningRate);
+    }
+
+    @Override
+    public void getParameters(double[] parameters) {
+        int offset = 0;
+        for (FloatLayerBlock block : blocks) {
+            offset = block.getWeights(parameters, offset);
+            for (float bias : block.biases) {
+                parameters[offset++] = bias;
+            }
+        }
+    }
+
+    @Override
+    public void setParameters(double[] parameters) {
+        int offset = 0;
+        for (FloatLayerBlock block : blocks) {
+            offset = block.setWeights(parameters, offset);
+            for (int i = 0; i < block.size; i++) {
+                block.biases[i] = (float) parameters[offset++];
+            }
+        }
+    }
+
+    @Override
+    public int getNumberOfConnections() {
+        int numberOfConnections = 0;
+        for (FloatLayerBlock block : blocks) {
+            numberOfConnections += block.getNumberOfConnections();
+        }
+        return numberOfConnections;
+    }
+
+    @Override
+    public double trainSamples(Dataset data, int[] order, double learningRate, ErrorHistory errors, TrainingProfile profile) {
+        FloatWorkspace ws = workspace;
+        double sampleError = 0;
+        for (int sample = 0; sample < data.size(); sample++) {
+            long time = profile == null ? 0 : System.nanoTime();
+            load(ws, data, order, sample, 1);
+            for (int i = 0; i < blocks.length; i++) {
+                blocks[i].forward(1, ws.outputs[i], ws.activations[i], ws.outputs[i + 1], blocks[i].inactiveTransfers,
+                        blocks[i].activationSums);
+            }
+            if (profile != null) {
+                time = profile.lap(TrainingProfile.Phase.FORWARD, time);
+            }
+            sampleError = backward(ws, 1, profile, time);
+            time = profile == null ? 0 : System.nanoTime();
+            errors.add(sampleError);
+            double rate = nextRate(learningRate);
+            for (int i = 0; i < blocks.length; i++) {
+                blocks[i].updateWeights(rate, ws.outputs[i], ws.deltas[i], ws.weightGradients[i], ws.biasGradients[i]);
+            }
+            if (profile != null) {
+                profile.lap(TrainingProfile.Phase.WEIGHT_UPDATE, time);
+            }
+        }
+        return sampleError;
+    }
+
+    @Override
+    public double trainBatches(Dataset data, int[] order, double learningRate, int batchSize, ErrorHistory errors,
+            TrainingProfile profile) {
+        if (batchWorkspace == null || batchWorkspace.rows != batchSize) {
+            batchWorkspace = new FloatWorkspace(blocks, batchSize, true);
+        }
+        FloatWorkspace ws = batchWorkspace;
+        double sampleError = 0;
+        for (int from = 0; from < data.size(); from += batchSize) {
+            int samples = Math.min(batchSize, data.size() - from);
+            long time = profile == null ? 0 : System.nanoTime();
+            load(ws, data, order, from, samples);
+            for (int i = 0; i < blocks.length; i++) {
+                blocks[i].forward(samples, ws.outputs[i], ws.activations[i], ws.outputs[i + 1], ws.inactiveTransfers[i],
+                        ws.activationSums[i]);
+            }
+            if (profile != null) {
+                time = profile.lap(TrainingProfile.Phase.FORWARD, time);
+            }
+            backward(ws, samples, profile, time);
+            time = profile == null ? 0 : System.nanoTime();
+            double rate = nextRate(learningRate);
+            for (int i = 0; i < blocks.length; i++) {
+                blocks[i].accumulateGradients(samples, ws.outputs[i], ws.deltas[i], ws.weightGradients[i], ws.biasGradients[i]);
+                blocks[i].addStatistics(ws.inactiveTransfers[i], ws.activationSums[i]);
+                blocks[i].applyGradients(rate, samples, ws.weightGradients[i], ws.biasGradients[i]);
+            }
+            if (profile != null) {
+                profile.lap(TrainingProfile.Phase.WEIGHT_UPDATE, time);
+            }
+            for (int sample = 0; sample < samples; sample++) {
+                errors.add(ws.sampleErrors[sample]);
+            }
+            sampleError = ws.sampleErrors[samples - 1];
+        }
+        return sampleError;
+    }
+
+    private void load(FloatWorkspace ws, Dataset data, int[] order, int from, int samples) {
+        int inputSize = blocks[0].inputSize;
+        int outputSize = blocks[blocks.length - 1].size;
+        for (int sample = 0; sample < samples; sample++) {
+            int index = order == null ? from + sample : order[from + sample];
+            data.getInput(index, ws.outputs[0], sample * inputSize);
+            data.getTarget(index, ws.targets, sample * outputSize);
+        }
+    }
+
+    // Computes the deltas of the loaded samples and stores their summed absolute output error in
+    // ws.sampleErrors. Returns the error of the last sample. time is the start of the phase when profiled.
+    private double backward(FloatWorkspace ws, int samples, TrainingProfile profile, long time) {
+        int last = blocks.length - 1;
+        int outputSize = blocks[last].size;
+        float[] output = ws.getOutput();
+        float[] errors = ws.errors[last];
+        double sampleError = 0;
+        for (int sample = 0; sample < samples; sample++) {
+            sampleError = 0;
+            for (int index = sample * outputSize; index < (sample + 1) * outputSize; index++) {
+                errors[index] = output[index] - ws.targets[index];
+                sampleError += Math.abs(errors[index]);
+            }
+            ws.sampleErrors[sample] = sampleError;
+        }
+        blocks[last].calcDeltas(samples, ws.activations[last], output, errors, ws.deltas[last]);
+        if (profile != null) {
+            time = profile.lap(TrainingProfile.Phase.OUTPUT_ERROR, time);
+        }
+
+        // Backpropagate the error to hidden layers
+        for (int i = last - 1; i >= 0; i--) {
+            float[] hiddenErrors = ws.errors[i];
+            Arrays.fill(hiddenErrors, 0, samples * blocks[i].size, 0);
+            blocks[i + 1].propagateError(samples, ws.errors[i + 1], hiddenErrors);
+            blocks[i].calcDeltas(samples, ws.activations[i], ws.outputs[i + 1], hiddenErrors, ws.deltas[i]);
+        }
+        if (profile != null) {
+            profile.lap(TrainingProfile.Phase.BACKPROPAGATION, time);
+        }
+        return sampleError;
+    }
+
+    // Forward pass of the samples loaded into the workspace that leaves the blocks unchanged
+    private double[] infer(FloatWorkspace ws, int samples) {
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i].forward(samples, ws.outputs[i], ws.outputs[i + 1], ws.outputs[i + 1], null, null);
+        }
+        float[] output = ws.getOutput();
+        for (int i = 0; i < samples * blocks[blocks.length - 1].size; i++) {
+            ws.predictions[i] = output[i];
+        }
+        return ws.predictions;
+    }
+
+    @Override
+    public void predict(double[] input, double[] output) {
+        FloatWorkspace ws = inferenceWorkspaces.get();
+        for (int i = 0; i < blocks[0].inputSize; i++) {
+            ws.outputs[0][i] = (float) input[i];
+        }
+        System.arraycopy(infer(ws, 1), 0, output, 0, output.length);
+    }
+
+    @Override
+    public double[] predict(Dataset data, int from, int samples) {
+        FloatWorkspace ws = inferenceWorkspaces.get();
+        int inputSize = blocks[0].inputSize;
+        for (int sample = 0; sample < samples; sample++) {
+            data.getInput(from + sample, ws.outputs[0], sample * inputSize);
+        }
+        return infer(ws, samples);
+    }
+
+    @Override
+    public double measureError(Dataset data, int from, int samples) {
+        FloatWorkspace ws = inferenceWorkspaces.get();
+        int outputSize = blocks[blocks.length - 1].size;
+        double[] predicted = predict(data, from, samples);
+        double error = 0;
+        for (int sample = 0; sample < samples; sample++) {
+            data.getTarget(from + sample, ws.targets, sample * outputSize);
+            double sampleError = 0;
+            for (int i = sample * outputSize; i < (sample + 1) * outputSize; i++) {
+                sampleError += Math.abs(predicted[i] - ws.targets[i]);
+            }
+            error += sampleError / outputSize;
+        }
+        return error;
+    }
+}
@@ -0,0 +1,189 @@
+package network;
+
+import java.util.Arrays;
+
+// Float version of LayerBlock with the same layout. Weights and biases are stored as float and the
+// dot products are summed in float.
+class FloatLayerBlock extends ArrayBlock<float[]> {
+
+    // The optimizer state is shared with the LayerBlock this block was converted from and stays double,
+    // the optimizer turns the gradients into steps in these buffers
+    private final double[] weightSteps;
+    private final double[] biasSteps;
+
+    FloatLayerBlock(LayerBlock block) {
+        super(block.inputSize, block.size, block.activationFunction, block.rowStart, block.columns, block.prunedWeights,
+                toFloat(block.weights), toFloat(block.previousWeights), toFloat(block.biases));
+        System.arraycopy(block.sumOfDeltas, 0, sumOfDeltas, 0, sumOfDeltas.length);
+        System.arraycopy(block.weightUpdates, 0, weightUpdates, 0, size);
+        System.arraycopy(block.activationSums, 0, activationSums, 0, size);
+        System.arraycopy(block.inactiveTransfers, 0, inactiveTransfers, 0, size);
+        optimizer = block.optimizer;
+        weightState = block.weightState;
+        biasState = block.biasState;
+        weightSteps = optimizer == null ? null : new double[weights.length];
+        biasSteps = optimizer == null ? null : new double[size];
+    }
+
+    private static float[] toFloat(double[] values) {
+        float[] floats = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            floats[i] = (float) values[i];
+        }
+        return floats;
+    }
+
+    // Double version with the same values, used to write the state back into the object graph
+    LayerBlock toLayerBlock() {
+        LayerBlock block = new LayerBlock(inputSize, size, activationFunction, rowStart, columns, prunedWeights);
+        for (int i = 0; i < weights.length; i++) {
+            block.weights[i] = weights[i];
+            block.previousWeights[i] = previousWeights[i];
+        }
+        System.arraycopy(sumOfDeltas, 0, block.sumOfDeltas, 0, sumOfDeltas.length);
+        System.arraycopy(weightUpdates, 0, block.weightUpdates, 0, size);
+        for (int i = 0; i < size; i++) {
+            block.biases[i] = biases[i];
+        }
+        System.arraycopy(activationSums, 0, block.activationSums, 0, size);
+        System.arraycopy(inactiveTransfers, 0, block.inactiveTransfers, 0, size);
+        block.optimizer = optimizer;
+        block.weightState = weightState;
+        block.biasState = biasState;
+        return block;
+    }
+
+    @Override
+    void getWeights(int from, int to, double[] destination, int offset) {
+        for (int i = from; i < to; i++) {
+            destination[offset++] = weights[i];
+        }
+    }
+
+    @Override
+    void setWeights(int from, int to, double[] source, int offset) {
+        for (int i = from; i < to; i++) {
+            weights[i] = (float) source[offset++];
+        }
+    }
+
+    @Override
+    void dot4(int row, float[] input, int inputOffset, float[] activations, int index) {
+        kernels.dot4(weights, row * inputSize, input, inputOffset, inputSize, inputSize, activations, index, size);
+    }
+
+    @Override
+    void dot(int row, float[] input, int inputOffset, float[] activations, int index) {
+        if (columns == null) {
+            activations[index] = kernels.dot(weights, row * inputSize, input, inputOffset, inputSize);
+            return;
+        }
+        float net = 0;
+        for (int i = rowStart[row]; i < rowStart[row + 1]; i++) {
+            net += weights[i] * input[inputOffset + columns[i]];
+        }
+        activations[index] = net;
+    }
+
+    @Override
+    void addBias(int row, int samples, float[] activations) {
+        for (int sample = 0; sample < samples; sample++) {
+            activations[sample * size + row] += biases[row];
+        }
+    }
+
+    @Override
+    void apply(float[] x, float[] y, int from, int to, double[] inactiveTransfers, double[] activationSums) {
+        activationFunction.apply(x, y, from, to, inactiveTransfers, activationSums);
+    }
+
+    @Override
+    void propagateError(int row, float[] errors, int index, float[] previousErrors, int offset) {
+        float error = errors[index];
+        if (columns == null) {
+            kernels.axpy(error, weights, row * inputSize, previousErrors, offset, inputSize);
+            return;
+        }
+        for (int i = rowStart[row]; i < rowStart[row + 1]; i++) {
+            previousErrors[offset + columns[i]] += weights[i] * error;
+        }
+    }
+
+    @Override
+    void derivative(float[] x, float[] outputs, float[] factors, float[] y, int from, int to) {
+        activationFunction.derivative(x, outputs, factors, y, from, to);
+    }
+
+    @Override
+    void accumulateGradients(int row, float[] deltas, int index, float[] input, int inputOffset,
+            float[] weightGradients, float[] biasGradients) {
+        float delta = deltas[index];
+        if (columns == null) {
+            kernels.axpy(delta, input, inputOffset, weightGradients, row * inputSize, inputSize);
+        } else {
+            for (int i = rowStart[row]; i < rowStart[row + 1]; i++) {
+                weightGradients[i] += delta * input[inputOffset + columns[i]];
+            }
+        }
+        biasGradients[row] += delta;
+    }
+
+    @Override
+    void applyGradients(int row, double rate, float[] weightGradients, float[] biasGradients) {
+        float step = (float) rate;
+        int start = getRowStart(row);
+        int end = getRowEnd(row);
+        kernels.updateWeights(step, weightGradients, start, weights, previousWeights, sumOfDeltas, start, end - start);
+        Arrays.fill(weightGradients, start, end, 0);
+        biases[row] -= step * biasGradients[row];
+        biasGradients[row] = 0;
+    }
+
+    // The steps are computed in double and written back into the gradients for the kernel
+    @Override
+    void applySteps(Optimizer optimizer, double rate, int samples, float[] weightGradients, float[] biasGradients) {
+        double scale = 1.0 / samples;
+        for (int i = 0; i < weights.length; i++) {
+            weightSteps[i] = weightGradients[i] * scale;
+        }
+        for (int row = 0; row < size; row++) {
+            biasSteps[row] = biasGradients[row] * scale;
+            biasGradients[row] = 0;
+        }
+        optimizer.steps(weightSteps, weightState, 0, weights.length, rate);
+        optimizer.steps(biasSteps, biasState, 0, size, rate);
+        for (int i = 0; i < weights.length; i++) {
+            weightGradients[i] = (float) weightSteps[i];
+        }
+        kernels.updateWeights(1, weightGradients, 0, weights, previousWeights, sumOfDeltas, 0, weights.length);
+        Arrays.fill(weightGradients, 0);
+        for (int row = 0; row < size; row++) {
+            biases[row] -= (float) biasSteps[row];
+        }
+    }
+
+    @Override
+    void updateWeights(int row, double learningRate, float[] input, float[] deltas) {
+        float step = (float) learningRate * deltas[row];
+        if (columns == null) {
+            kernels.updateWeights(step, input, 0, weights, previousWeights, sumOfDeltas, row * inputSize, inputSize);
+        } else {
+            for (int i = rowStart[row]; i < rowStart[row + 1]; i++) {
+                updateWeight(i, weights[i] - step * input[columns[i]]);
+            }
+        }
+        biases[row] -= step;
+    }
+
+    @Override
+    void clear(float[] array, int from, int to) {
+        Arrays.fill(array, from, to, 0);
+    }
+
+    // Same bookkeeping as Connection.setWeight
+    private void updateWeight(int i, float weight) {
+        sumOfDeltas[i] += Math.abs(previousWeights[i] - weight);
+        previousWeights[i] = weights[i];
+        weights[i] = weight;
+    }
+}
@@ -0,0 +1,58 @@
+package network;
+
+// Float version of Workspace for FloatEngine, with the same layout
+class FloatWorkspace {
+
+    final int rows;
+
+    // outputs[0] is the input layer, outputs[i + 1] belongs to block i
+    final float[][] outputs;
+    final float[] targets;
+    final float[][] activations;
+    final float[][] errors;
+    final float[][] deltas;
+    final double[] sampleErrors;
+
+    final float[][] weightGradients;
+    final float[][] biasGradients;
+
+    final double[][] inactiveTransfers;
+    final double[][] activationSums;
+
+    // Outputs converted to double for the callers of predict
+    final double[] predictions;
+
+    FloatWorkspace(FloatLayerBlock[] blocks, int rows, boolean training) {
+        this.rows = rows;
+        outputs = new float[blocks.length + 1][];
+        activations = new float[blocks.length][];
+        errors = new float[blocks.length][];
+        deltas = new float[blocks.length][];
+        sampleErrors = new double[rows];
+        weightGradients = new float[blocks.length][];
+        biasGradients = new float[blocks.length][];
+        inactiveTransfers = new double[blocks.length][];
+        activationSums = new double[blocks.length][];
+
+        outputs[0] = new float[rows * blocks[0].inputSize];
+        targets = new float[rows * blocks[blocks.length - 1].size];
+        predictions = new double[rows * blocks[blocks.length - 1].size];
+        for (int i = 0; i < blocks.length; i++) {
+            outputs[i + 1] = new float[rows * blocks[i].size];
+            if (!training) {
+                continue;
+            }
+            activations[i] = new float[rows * blocks[i].size];
+            errors[i] = new float[rows * blocks[i].size];
+            deltas[i] = new float[rows * blocks[i].size];
+            weightGradients[i] = new float[blocks[i].weights.length];
+            biasGradients[i] = new float[blocks[i].size];
+            inactiveTransfers[i] = new double[blocks[i].size];
+            activationSums[i] = new double[blocks[i].size];
+        }
+    }
+
+    float[] getOutput() {
+        return outputs[outputs.length - 1];
+    }
+}
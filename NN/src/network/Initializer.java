@@ -0,0 +1,41 @@
+package network;
+
+import java.util.SplittableRandom;
+
+// Schemes for the initial weights of a layer, drawn from a seeded SplittableRandom so a net can be rebuilt
+// exactly from its seed. fill writes the weights of a whole layer at once, fanIn and fanOut are the sizes
+// of the layers the weights connect.
+public enum Initializer {
+
+    // Uniform in [0, 0.5), the initialization the nets have always used
+    UNIFORM {
+        @Override
+        public void fill(double[] weights, int from, int to, int fanIn, int fanOut, SplittableRandom random) {
+            for (int i = from; i < to; i++) {
+                weights[i] = random.nextDouble() * 0.5;
+            }
+        }
+    },
+    // Glorot and Bengio, uniform in [-sqrt(6 / (fanIn + fanOut)), sqrt(6 / (fanIn + fanOut))), suits Sigmoid
+    XAVIER {
+        @Override
+        public void fill(double[] weights, int from, int to, int fanIn, int fanOut, SplittableRandom random) {
+            double limit = Math.sqrt(6.0 / (fanIn + fanOut));
+            for (int i = from; i < to; i++) {
+                weights[i] = (2 * random.nextDouble() - 1) * limit;
+            }
+        }
+    },
+    // He et al., normal with standard deviation sqrt(2 / fanIn), suits Relu
+    HE {
+        @Override
+        public void fill(double[] weights, int from, int to, int fanIn, int fanOut, SplittableRandom random) {
+            double deviation = Math.sqrt(2.0 / fanIn);
+            for (int i = from; i < to; i++) {
+                weights[i] = random.nextGaussian() * deviation;
+            }
+        }
+    };
+
+    public abstract void fill(double[] weights, int from, int to, int fanIn, int fanOut, SplittableRandom random);
+}
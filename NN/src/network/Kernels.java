@@ -0,0 +1,95 @@
+package network;
+
+// The inner loops of the array engines over contiguous ranges: dense dot products, axpy style updates and
+// the bulk evaluation of Relu and Sigmoid, in double for ArrayEngine and in float for FloatEngine. ScalarKernels
+// runs them as plain loops, VectorKernels with the Vector API of the jdk.incubator.vector module. VectorKernels lives
+// in the source root src-vector, which only compiles with javac --add-modules jdk.incubator.vector, src compiles
+// without it. The vector version is used when it was compiled and the module is present
+// (java --add-modules jdk.incubator.vector), otherwise the scalar one. -Dnetwork.kernels=scalar forces the
+// scalar kernels, -Dnetwork.kernels=128 (or 256, 512) vectors of that many bits instead of the preferred size.
+// The vector kernels sum in a different order, so results can differ from the scalar ones in the last bits.
+public abstract class Kernels {
+
+    static final String PROPERTY = "network.kernels";
+
+    private static final Kernels kernels = load();
+
+    private static Kernels load() {
+        if (!System.getProperty(PROPERTY, "vector").equals("scalar")
+                && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                // Loaded by name, so the vector classes are only linked when the module is there
+                return (Kernels) Class.forName("network.VectorKernels").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                System.err.println("Vector kernels not available, using scalar kernels: " + cause);
+            }
+        }
+        return new ScalarKernels();
+    }
+
+    public static Kernels get() {
+        return kernels;
+    }
+
+    // Vector size in bits, 0 for the scalar kernels
+    public abstract int getVectorBits();
+
+    public abstract double dot(double[] a, int aOffset, double[] b, int bOffset, int length);
+
+    public abstract float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    // Dot products of one weight row with four inputs that start stride elements apart.
+    // Result k is written to output[outputOffset + k * outputStride].
+    public abstract void dot4(double[] weights, int weightOffset, double[] input, int inputOffset, int stride, int length,
+            double[] output, int outputOffset, int outputStride);
+
+    public abstract void dot4(float[] weights, int weightOffset, float[] input, int inputOffset, int stride, int length,
+            float[] output, int outputOffset, int outputStride);
+
+    // int8 versions with int32 accumulation for QuantizedModel. Values are at most 127 in magnitude,
+    // so the sums cannot overflow for rows shorter than 133000 elements.
+    public abstract int dot(byte[] a, int aOffset, byte[] b, int bOffset, int length);
+
+    public abstract void dot4(byte[] weights, int weightOffset, byte[] input, int inputOffset, int stride, int length,
+            int[] output, int outputOffset, int outputStride);
+
+    // y += alpha * x
+    public abstract void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length);
+
+    public abstract void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length);
+
+    // weights -= step * x with the bookkeeping of Connection.setWeight: the change against the previous weight
+    // is added to sumOfDeltas and the old weight becomes the previous weight
+    public abstract void updateWeights(double step, double[] x, int xOffset, double[] weights, double[] previousWeights,
+            double[] sumOfDeltas, int offset, int length);
+
+    public abstract void updateWeights(float step, float[] x, int xOffset, float[] weights, float[] previousWeights,
+            double[] sumOfDeltas, int offset, int length);
+
+    // y[i] = Relu.phi(x[i]) for i from from to to, y may be x. Outputs up to Relu.INACTIVE_OUTPUT are counted in
+    // inactiveTransfers[i - from] unless it is null.
+    public abstract void relu(double alpha, double[] x, double[] y, int from, int to, double[] inactiveTransfers);
+
+    public abstract void relu(float alpha, float[] x, float[] y, int from, int to, double[] inactiveTransfers);
+
+    // y[i] = factors[i] * Relu.derivative(x[i]), which turns the errors of a layer into its deltas
+    public abstract void reluDerivative(double alpha, double[] x, double[] factors, double[] y, int from, int to);
+
+    public abstract void reluDerivative(float alpha, float[] x, float[] factors, float[] y, int from, int to);
+
+    // y[i] = Sigmoid.phi(x[i]), adds one to activationSums[i - from] unless it is null
+    public abstract void sigmoid(double[] x, double[] y, int from, int to, double[] activationSums);
+
+    public abstract void sigmoid(float[] x, float[] y, int from, int to, double[] activationSums);
+
+    // y[i] = factors[i] * Sigmoid.derivative computed from the outputs of Sigmoid.phi
+    public abstract void sigmoidDerivative(double[] outputs, double[] factors, double[] y, int from, int to);
+
+    public abstract void sigmoidDerivative(float[] outputs, float[] factors, float[] y, int from, int to);
+
+    @Override
+    public String toString() {
+        return getVectorBits() == 0 ? "Scalar" : "Vector " + getVectorBits() + " bit";
+    }
+}
@@ -7,16 +7,17 @@ public class Layer implements Serializable {
 
     public ArrayList<Neuron> nodes;
 
-    private double[] output;
-
     public Layer() {
         nodes = new ArrayList<>();
     }
 
+    // Indexed loops, iterators would allocate on every sample
     public void calcInput() {
-        for (Neuron node : nodes) {
+        for (int i = 0; i < nodes.size(); i++) {
+            Neuron node = nodes.get(i);
             double net = 0;
-            for (Connection edge : node.incoming) {
+            for (int j = 0; j < node.incoming.size(); j++) {
+                Connection edge = node.incoming.get(j);
                 net += edge.getWeight() * edge.sourceNode.getOutput();
             }
             net += node.getBias();
@@ -27,7 +28,11 @@ public class Layer implements Serializable {
     }
 
     public double[] getOutput() {
-        output = new double[nodes.size()];
+        return getOutput(new double[nodes.size()]);
+    }
+
+    // Fills the given array instead of allocating a new one
+    public double[] getOutput(double[] output) {
         for (int i = 0; i < nodes.size(); i++) {
             output[i] = nodes.get(i).getOutput();
         }
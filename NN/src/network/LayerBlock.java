@@ -0,0 +1,159 @@
+package network;
+
+import java.util.Arrays;
+
+// Weights, biases and pruning statistics of one layer stored as flat arrays.
+// Row r holds the incoming weights of neuron r, column c belongs to neuron c of the previous layer.
+// A fully connected layer is stored dense and row-major, a pruned layer in compressed sparse row format:
+// the weights of row r are found at rowStart[r] until rowStart[r + 1] and columns holds their column.
+// A layer that kept most of its connections stays dense, its pruned weights are held at zero.
+class LayerBlock extends ArrayBlock<double[]> {
+
+    LayerBlock(int inputSize, int size, Activation activationFunction) {
+        this(inputSize, size, activationFunction, null, null, null);
+    }
+
+    LayerBlock(int inputSize, int size, Activation activationFunction, int[] prunedWeights) {
+        this(inputSize, size, activationFunction, null, null, prunedWeights);
+    }
+
+    LayerBlock(int inputSize, int size, Activation activationFunction, int[] rowStart, int[] columns) {
+        this(inputSize, size, activationFunction, rowStart, columns, null);
+    }
+
+    LayerBlock(int inputSize, int size, Activation activationFunction, int[] rowStart, int[] columns,
+            int[] prunedWeights) {
+        super(inputSize, size, activationFunction, rowStart, columns, prunedWeights,
+                new double[getNumberOfWeights(inputSize, size, columns)],
+                new double[getNumberOfWeights(inputSize, size, columns)], new double[size]);
+    }
+
+    @Override
+    void getWeights(int from, int to, double[] destination, int offset) {
+        System.arraycopy(weights, from, destination, offset, to - from);
+    }
+
+    @Override
+    void setWeights(int from, int to, double[] source, int offset) {
+        System.arraycopy(source, offset, weights, from, to - from);
+    }
+
+    @Override
+    void dot4(int row, double[] input, int inputOffset, double[] activations, int index) {
+        kernels.dot4(weights, row * inputSize, input, inputOffset, inputSize, inputSize, activations, index, size);
+    }
+
+    @Override
+    void dot(int row, double[] input, int inputOffset, double[] activations, int index) {
+        if (columns == null) {
+            activations[index] = kernels.dot(weights, row * inputSize, input, inputOffset, inputSize);
+            return;
+        }
+        double net = 0;
+        for (int i = rowStart[row]; i < rowStart[row + 1]; i++) {
+            net += weights[i] * input[inputOffset + columns[i]];
+        }
+        activations[index] = net;
+    }
+
+    @Override
+    void addBias(int row, int samples, double[] activations) {
+        for (int sample = 0; sample < samples; sample++) {
+            activations[sample * size + row] += biases[row];
+        }
+    }
+
+    @Override
+    void apply(double[] x, double[] y, int from, int to, double[] inactiveTransfers, double[] activationSums) {
+        activationFunction.apply(x, y, from, to, inactiveTransfers, activationSums);
+    }
+
+    @Override
+    void propagateError(int row, double[] errors, int index, double[] previousErrors, int offset) {
+        double error = errors[index];
+        if (columns == null) {
+            kernels.axpy(error, weights, row * inputSize, previousErrors, offset, inputSize);
+            return;
+        }
+        for (int i = rowStart[row]; i < rowStart[row + 1]; i++) {
+            previousErrors[offset + columns[i]] += weights[i] * error;
+        }
+    }
+
+    @Override
+    void derivative(double[] x, double[] outputs, double[] factors, double[] y, int from, int to) {
+        activationFunction.derivative(x, outputs, factors, y, from, to);
+    }
+
+    @Override
+    void accumulateGradients(int row, double[] deltas, int index, double[] input, int inputOffset,
+            double[] weightGradients, double[] biasGradients) {
+        double delta = deltas[index];
+        if (columns == null) {
+            kernels.axpy(delta, input, inputOffset, weightGradients, row * inputSize, inputSize);
+        } else {
+            for (int i = rowStart[row]; i < rowStart[row + 1]; i++) {
+                weightGradients[i] += delta * input[inputOffset + columns[i]];
+            }
+        }
+        biasGradients[row] += delta;
+    }
+
+    @Override
+    void applyGradients(int row, double rate, double[] weightGradients, double[] biasGradients) {
+        int start = getRowStart(row);
+        int end = getRowEnd(row);
+        kernels.updateWeights(rate, weightGradients, start, weights, previousWeights, sumOfDeltas, start, end - start);
+        Arrays.fill(weightGradients, start, end, 0);
+        biases[row] -= rate * biasGradients[row];
+        biasGradients[row] = 0;
+    }
+
+    // The steps are computed in place of the gradients
+    @Override
+    void applySteps(Optimizer optimizer, double rate, int samples, double[] weightGradients, double[] biasGradients) {
+        if (samples > 1) {
+            double scale = 1.0 / samples;
+            for (int i = 0; i < weights.length; i++) {
+                weightGradients[i] *= scale;
+            }
+            for (int row = 0; row < size; row++) {
+                biasGradients[row] *= scale;
+            }
+        }
+        optimizer.steps(weightGradients, weightState, 0, weights.length, rate);
+        optimizer.steps(biasGradients, biasState, 0, size, rate);
+        kernels.updateWeights(1, weightGradients, 0, weights, previousWeights, sumOfDeltas, 0, weights.length);
+        Arrays.fill(weightGradients, 0);
+        for (int row = 0; row < size; row++) {
+            biases[row] -= biasGradients[row];
+            biasGradients[row] = 0;
+        }
+    }
+
+    @Override
+    void updateWeights(int row, double learningRate, double[] input, double[] deltas) {
+        double delta = deltas[row];
+        if (columns == null) {
+            kernels.updateWeights(learningRate * delta, input, 0, weights, previousWeights, sumOfDeltas, row * inputSize,
+                    inputSize);
+        } else {
+            for (int i = rowStart[row]; i < rowStart[row + 1]; i++) {
+                updateWeight(i, weights[i] - learningRate * delta * input[columns[i]]);
+            }
+        }
+        biases[row] -= learningRate * delta;
+    }
+
+    @Override
+    void clear(double[] array, int from, int to) {
+        Arrays.fill(array, from, to, 0);
+    }
+
+    // Same bookkeeping as Connection.setWeight
+    private void updateWeight(int i, double weight) {
+        sumOfDeltas[i] += Math.abs(previousWeights[i] - weight);
+        previousWeights[i] = weights[i];
+        weights[i] = weight;
+    }
+}
@@ -0,0 +1,73 @@
+package network;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+
+// A trained net loaded from a model file for inference, see Net.save. The weights go straight into the arrays
+// of the array engine, no neurons and connections are created.
+public class Model {
+
+    private final ArrayEngine engine;
+    private final int[] dimension;
+
+    private Model(LayerBlock[] blocks) {
+        this.engine = new ArrayEngine(blocks);
+        this.dimension = new int[blocks.length + 1];
+        dimension[0] = blocks[0].inputSize;
+        for (int i = 0; i < blocks.length; i++) {
+            dimension[i + 1] = blocks[i].size;
+        }
+    }
+
+    public static Model load(Path file) throws IOException {
+        return new Model(ModelFile.read(file));
+    }
+
+    public void save(Path file) throws IOException {
+        ModelFile.write(engine.blocks, file);
+    }
+
+    public double[] predict(double[] input) {
+        double[] output = new double[dimension[dimension.length - 1]];
+        predict(input, output);
+        return output;
+    }
+
+    // Thread-safe like Net.predict(double[], double[])
+    public void predict(double[] input, double[] output) {
+        engine.predict(input, output);
+    }
+
+    // Predicts all inputs in parallel, see Net.predictBatch
+    public double[][] predictBatch(double[][] inputs) {
+        Dataset data = new ArrayDataset(inputs, new double[0][]);
+        int outputSize = dimension[dimension.length - 1];
+        double[][] outputs = new double[inputs.length][outputSize];
+        IntStream.range(0, Engine.getNumberOfChunks(inputs.length)).parallel().forEach(chunk -> {
+            int from = chunk * ArrayEngine.INFERENCE_ROWS;
+            int samples = Math.min(ArrayEngine.INFERENCE_ROWS, inputs.length - from);
+            double[] result = engine.predict(data, from, samples);
+            for (int sample = 0; sample < samples; sample++) {
+                System.arraycopy(result, sample * outputSize, outputs[from + sample], 0, outputSize);
+            }
+        });
+        return outputs;
+    }
+
+    public double measureErrorOnTestData(Dataset testData) {
+        return engine.measureError(testData, null);
+    }
+
+    public int[] getDimension() {
+        return dimension.clone();
+    }
+
+    public int getNumberOfConnections() {
+        return engine.getNumberOfConnections();
+    }
+
+    LayerBlock[] getBlocks() {
+        return engine.blocks;
+    }
+}
@@ -0,0 +1,213 @@
+package network;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Binary model format with the layer blocks of the array engine as flat little-endian arrays.
+// The file starts with a header of four ints (magic number, version, blocks, input size), followed by one record
+// per block: four ints (size, activation, number of weights, layout), for sparse blocks the row starts and columns
+// as ints, for dense blocks with pruned weights their number and indices as ints, then the weights and the biases
+// as doubles. Training statistics are not stored.
+final class ModelFile {
+
+    private static final int MAGIC = 0x4E4E4D44;
+    // Version 2 added the layout of dense blocks with pruned weights, files of version 1 are still read
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 * Integer.BYTES;
+    private static final int BLOCK_HEADER_SIZE = 4 * Integer.BYTES;
+
+    private static final int DENSE = 0;
+    private static final int SPARSE = 1;
+    private static final int PRUNED = 2;
+
+    private static final int RELU = 1;
+    private static final int SIGMOID = 2;
+    private static final int FAST_SIGMOID = 3;
+
+    private ModelFile() {
+    }
+
+    // Written to a temporary file first, so an interrupted save never leaves a broken model file
+    static void write(LayerBlock[] blocks, Path file) throws IOException {
+        long length = HEADER_SIZE;
+        for (LayerBlock block : blocks) {
+            length += getLength(block);
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Model of " + length + " bytes is too large for the model format");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(blocks.length).putInt(blocks[0].inputSize);
+        for (LayerBlock block : blocks) {
+            buffer.putInt(block.size).putInt(getCode(block.activationFunction)).putInt(block.weights.length)
+                    .putInt(getLayout(block));
+            if (block.isSparse()) {
+                buffer.asIntBuffer().put(block.rowStart).put(block.columns);
+                buffer.position(buffer.position() + (block.rowStart.length + block.columns.length) * Integer.BYTES);
+            } else if (block.prunedWeights != null) {
+                buffer.putInt(block.prunedWeights.length);
+                buffer.asIntBuffer().put(block.prunedWeights);
+                buffer.position(buffer.position() + block.prunedWeights.length * Integer.BYTES);
+            }
+            buffer.asDoubleBuffer().put(block.weights).put(block.biases);
+            buffer.position(buffer.position() + (block.weights.length + block.biases.length) * Double.BYTES);
+        }
+        buffer.flip();
+
+        Path temporaryFile = Paths.get(file + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long getLength(LayerBlock block) {
+        long length = BLOCK_HEADER_SIZE + (long) (block.weights.length + block.size) * Double.BYTES;
+        if (block.isSparse()) {
+            length += (long) (block.rowStart.length + block.columns.length) * Integer.BYTES;
+        } else if (block.prunedWeights != null) {
+            length += (long) (1 + block.prunedWeights.length) * Integer.BYTES;
+        }
+        return length;
+    }
+
+    private static int getLayout(LayerBlock block) {
+        if (block.isSparse()) {
+            return SPARSE;
+        }
+        return block.prunedWeights == null ? DENSE : PRUNED;
+    }
+
+    // The arrays are copied out of the mapped file in bulk, nothing is parsed per weight
+    static LayerBlock[] read(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            int version = buffer.getInt() == MAGIC ? buffer.getInt() : -1;
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Not a model file of version 1 to " + VERSION);
+            }
+            LayerBlock[] blocks = new LayerBlock[buffer.getInt()];
+            int inputSize = buffer.getInt();
+            if (blocks.length < 1 || inputSize < 1) {
+                throw new IOException("Model file without layers");
+            }
+            for (int i = 0; i < blocks.length; i++) {
+                blocks[i] = readBlock(buffer, inputSize, version);
+                inputSize = blocks[i].size;
+            }
+            return blocks;
+        } catch (BufferUnderflowException ex) {
+            throw new IOException("Model file " + file + " is truncated");
+        }
+    }
+
+    private static LayerBlock readBlock(ByteBuffer buffer, int inputSize, int version) throws IOException {
+        int size = buffer.getInt();
+        Activation activation = getActivation(buffer.getInt());
+        int numberOfWeights = buffer.getInt();
+        int layout = buffer.getInt();
+        if (layout < DENSE || layout > (version == 1 ? SPARSE : PRUNED)) {
+            throw new IOException("Unknown layout " + layout + " of a layer");
+        }
+        boolean sparse = layout == SPARSE;
+        if (size < 1 || numberOfWeights < 0 || (!sparse && numberOfWeights != (long) size * inputSize)) {
+            throw new IOException("Invalid layer of " + size + " neurons and " + numberOfWeights + " weights");
+        }
+        if (((long) numberOfWeights + size) * Double.BYTES > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+
+        LayerBlock block;
+        if (sparse) {
+            int[] rowStart = new int[size + 1];
+            int[] columns = new int[numberOfWeights];
+            buffer.asIntBuffer().get(rowStart).get(columns);
+            buffer.position(buffer.position() + (rowStart.length + columns.length) * Integer.BYTES);
+            checkSparseStructure(rowStart, columns, inputSize);
+            block = new LayerBlock(inputSize, size, activation, rowStart, columns);
+        } else if (layout == PRUNED) {
+            int numberOfPrunedWeights = buffer.getInt();
+            if (numberOfPrunedWeights < 0 || numberOfPrunedWeights > numberOfWeights) {
+                throw new IOException("Invalid number of " + numberOfPrunedWeights + " pruned weights");
+            }
+            int[] prunedWeights = new int[numberOfPrunedWeights];
+            buffer.asIntBuffer().get(prunedWeights);
+            buffer.position(buffer.position() + prunedWeights.length * Integer.BYTES);
+            checkPrunedWeights(prunedWeights, numberOfWeights);
+            block = new LayerBlock(inputSize, size, activation, prunedWeights);
+        } else {
+            block = new LayerBlock(inputSize, size, activation);
+        }
+        buffer.asDoubleBuffer().get(block.weights).get(block.biases);
+        buffer.position(buffer.position() + (block.weights.length + block.biases.length) * Double.BYTES);
+        return block;
+    }
+
+    // The forward pass indexes with these arrays, a corrupt file must not make it read out of bounds
+    private static void checkSparseStructure(int[] rowStart, int[] columns, int inputSize) throws IOException {
+        if (rowStart[0] != 0 || rowStart[rowStart.length - 1] != columns.length) {
+            throw new IOException("Invalid row starts of a sparse layer");
+        }
+        for (int row = 1; row < rowStart.length; row++) {
+            if (rowStart[row] < rowStart[row - 1]) {
+                throw new IOException("Invalid row starts of a sparse layer");
+            }
+        }
+        for (int column : columns) {
+            if (column < 0 || column >= inputSize) {
+                throw new IOException("Column " + column + " of a sparse layer is out of range");
+            }
+        }
+    }
+
+    // Training and setWeights rely on ascending indices
+    private static void checkPrunedWeights(int[] prunedWeights, int numberOfWeights) throws IOException {
+        for (int i = 0; i < prunedWeights.length; i++) {
+            if (prunedWeights[i] < (i == 0 ? 0 : prunedWeights[i - 1] + 1) || prunedWeights[i] >= numberOfWeights) {
+                throw new IOException("Invalid pruned weight " + prunedWeights[i] + " of a dense layer");
+            }
+        }
+    }
+
+    private static int getCode(Activation activation) throws IOException {
+        if (activation instanceof Relu) {
+            return RELU;
+        }
+        if (activation instanceof Sigmoid) {
+            return SIGMOID;
+        }
+        if (activation instanceof FastSigmoid) {
+            return FAST_SIGMOID;
+        }
+        throw new IOException("Activation function " + activation + " cannot be stored in a model file");
+    }
+
+    private static Activation getActivation(int code) throws IOException {
+        switch (code) {
+            case RELU:
+                return new Relu();
+            case SIGMOID:
+                return new Sigmoid();
+            case FAST_SIGMOID:
+                return new FastSigmoid();
+            default:
+                throw new IOException("Unknown activation function " + code + " in model file");
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package network;
+
+// Gradient descent with momentum: the step follows a velocity v = momentum * v + gradient
+public class Momentum extends Optimizer {
+
+    final double momentum;
+
+    public Momentum(double momentum) throws ParameterException {
+        if (momentum < 0 || momentum >= 1) {
+            throw new ParameterException("Momentum has to be at least 0 and below 1.");
+        }
+        this.momentum = momentum;
+    }
+
+    @Override
+    public int getStateSize() {
+        return 1;
+    }
+
+    @Override
+    public void steps(double[] gradients, double[][] state, int from, int to, double rate) {
+        double[] velocity = state[0];
+        for (int i = from; i < to; i++) {
+            velocity[i] = momentum * velocity[i] + gradients[i];
+            gradients[i] = rate * velocity[i];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Momentum " + momentum;
+    }
+}
@@ -0,0 +1,23 @@
+package network;
+
+// Nesterov momentum in the form of Sutskever et al.: the step looks ahead along the updated velocity
+public final class Nesterov extends Momentum {
+
+    public Nesterov(double momentum) throws ParameterException {
+        super(momentum);
+    }
+
+    @Override
+    public void steps(double[] gradients, double[][] state, int from, int to, double rate) {
+        double[] velocity = state[0];
+        for (int i = from; i < to; i++) {
+            velocity[i] = momentum * velocity[i] + gradients[i];
+            gradients[i] = rate * (gradients[i] + momentum * velocity[i]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Nesterov " + momentum;
+    }
+}
@@ -1,11 +1,17 @@
 package network;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
 
 public class Net implements Serializable {
 
+    // dimension follows the layer sizes after activation pruning, reset() restores the initial one
+    private final int[] initialDimension;
     int[] dimension;
     Layer inputLayer;
     Layer outputLayer;
@@ -15,7 +21,11 @@ public class Net implements Serializable {
 
     double[][] input;
     double[][] expected;
-    ArrayList<Double> outputErrors;
+    // Permutation of the sample indices, used to shuffle datasets that are shared and must not be reordered
+    private transient int[] sampleOrder;
+    // Errors of the most recent samples, bounded so long training runs do not grow it
+    private static final int ERROR_HISTORY_SIZE = 10000;
+    ErrorHistory outputErrors;
 
     final Activation defaultActivation = new Sigmoid();
     Activation hiddenLayerActivation;
@@ -28,21 +38,72 @@ public class Net implements Serializable {
     public boolean useWeightStabilityPruning;
     public boolean useActivationPruning;
 
-    public Net(int[] layerDimensions, Activation hiddenLayerActivation, Activation outputLayerActivation) {
-        this.hiddenLayerActivation = hiddenLayerActivation;
-        this.outputLayerActivation = outputLayerActivation;
-        this.dimension = layerDimensions;
+    // Runs predict and training on contiguous arrays instead of the Neuron/Connection graph
+    public boolean useArrayEngine;
+    private transient Engine engine;
 
-        init();
+    // Stores weights, activations and samples as float on the arrays, see FloatEngine. Always runs on arrays
+    // and on one training thread.
+    public boolean useFloatPrecision;
+
+    // Workers update the shared weights without synchronisation when training on several threads. Only for plain
+    // SGD: the step counter and the state of the other optimizers would be updated by all workers at once.
+    public boolean useHogwild;
+    private int trainingThreads = 1;
+    private transient ParallelTrainer parallelTrainer;
+
+    // Times the phases of training and the predictions into the profile, see TrainingProfile. Can be switched
+    // at any time; while it is off the training loops only check for a missing profile.
+    public boolean useProfiling;
+    private transient TrainingProfile profile;
+
+    // Shuffles and gathers the samples into contiguous blocks on a background thread while training, see BatchLoader.
+    // The arrays given to training are not reordered then.
+    public boolean useAsyncLoading;
+
+    // The initial weights and the shuffling of the samples are drawn from one SplittableRandom seeded with seed,
+    // so training on one thread can be repeated exactly from the seed
+    private Initializer initializer;
+    private long seed;
+    private transient SplittableRandom random;
+
+    // The graph as it was built, reset() restores it in place after pruning removed connections and neurons.
+    // The connections between layer i - 1 and i are initialConnections[layerEnds[i - 1]] to [layerEnds[i] - 1].
+    private Neuron[][] initialNodes;
+    private Connection[] initialConnections;
+    private int[] layerEnds;
+    private transient double[] weightBuffer;
+
+    // Plain SGD unless set, the state of other optimizers is kept per connection and neuron of the graph as it was built
+    private Optimizer optimizer = new Sgd();
+    private OptimizerState optimizerState;
+
+    public Net(int[] layerDimensions, Activation hiddenLayerActivation, Activation outputLayerActivation) {
+        this(layerDimensions, hiddenLayerActivation, outputLayerActivation, null);
     }
 
     public Net(int[] layerDimensions, Activation hiddenLayerActivation, Activation outputLayerActivation, Pruner pruner) {
-        this(layerDimensions, hiddenLayerActivation, outputLayerActivation);
+        this(layerDimensions, hiddenLayerActivation, outputLayerActivation, pruner, Initializer.UNIFORM,
+                ThreadLocalRandom.current().nextLong());
+    }
+
+    public Net(int[] layerDimensions, Activation hiddenLayerActivation, Activation outputLayerActivation, Pruner pruner,
+            Initializer initializer, long seed) {
+        this.hiddenLayerActivation = hiddenLayerActivation;
+        this.outputLayerActivation = outputLayerActivation;
+        this.initialDimension = layerDimensions.clone();
         this.pruner = pruner;
+        this.initializer = initializer;
+        this.seed = seed;
+
+        init();
+        restore();
     }
 
+    // Builds the neurons and connections once, reset() gives them their initial state
     private void init() {
-        outputErrors = new ArrayList<>();
+        dimension = initialDimension.clone();
+        outputErrors = new ErrorHistory(ERROR_HISTORY_SIZE);
         inputLayer = new Layer();
         hiddenLayers = new ArrayList<>();
         outputLayer = new Layer();
@@ -61,30 +122,240 @@ public class Net implements Serializable {
             outputLayer.nodes.add(new Neuron(this.outputLayerActivation, defaultBias));
         }
         addConnections();
+
+        ArrayList<Layer> layers = getLayers();
+        initialNodes = new Neuron[layers.size()][];
+        layerEnds = new int[layers.size()];
+        for (int i = 0; i < layers.size(); i++) {
+            initialNodes[i] = layers.get(i).nodes.toArray(new Neuron[0]);
+            if (i > 0) {
+                layerEnds[i] = layerEnds[i - 1] + initialNodes[i - 1].length * initialNodes[i].length;
+            }
+        }
+        initialConnections = connections.toArray(new Connection[0]);
+        for (int i = 0; i < initialConnections.length; i++) {
+            initialConnections[i].index = i;
+        }
+        int neurons = 0;
+        for (Neuron[] nodes : initialNodes) {
+            for (Neuron node : nodes) {
+                node.index = neurons++;
+            }
+        }
     }
 
+    // Restores the graph as it was built and draws new weights from the seed. Neurons, connections and their
+    // lists are reused. An array engine compiled from the unpruned graph keeps its blocks and workspaces and is
+    // refilled from the graph, after pruning or on the float engine the engine is compiled anew on its next use.
     public void reset() {
-        this.init();
+        restore();
+    }
+
+    // The body of reset, which the constructor calls without going through an overridable method
+    private void restore() {
+        ArrayEngine reusableEngine = engine instanceof ArrayEngine arrayEngine
+                && arrayEngine.getNumberOfConnections() == initialConnections.length ? arrayEngine : null;
+        engine = null;
+        System.arraycopy(initialDimension, 0, dimension, 0, dimension.length);
+        outputErrors.clear();
+        if (optimizerState != null) {
+            optimizerState.clear();
+        }
+        random = new SplittableRandom(seed);
+        // Shuffles permute the previous order, so it starts from the identity again
+        if (sampleOrder != null) {
+            for (int i = 0; i < sampleOrder.length; i++) {
+                sampleOrder[i] = i;
+            }
+        }
+        for (int i = 0; i < initialNodes.length; i++) {
+            Layer layer = i == 0 ? inputLayer : i == initialNodes.length - 1 ? outputLayer : hiddenLayers.get(i - 1);
+            layer.nodes.clear();
+            for (Neuron node : initialNodes[i]) {
+                node.reset(defaultBias);
+                node.incoming.clear();
+                node.outgoing.clear();
+                layer.nodes.add(node);
+            }
+        }
+        if (weightBuffer == null) {
+            int maxWeights = 0;
+            for (int i = 1; i < layerEnds.length; i++) {
+                maxWeights = Math.max(maxWeights, layerEnds[i] - layerEnds[i - 1]);
+            }
+            weightBuffer = new double[maxWeights];
+        }
+        connections.clear();
+        for (int i = 1; i < initialNodes.length; i++) {
+            int start = layerEnds[i - 1];
+            int end = layerEnds[i];
+            initializer.fill(weightBuffer, 0, end - start, initialNodes[i - 1].length, initialNodes[i].length, random);
+            // Added in the order they were built, so every list is the same as in a new net
+            for (int j = start; j < end; j++) {
+                Connection connection = initialConnections[j];
+                connection.restore(weightBuffer[j - start], 0, 0, 0);
+                connection.sourceNode.outgoing.add(connection);
+                connection.targetNode.incoming.add(connection);
+                connections.add(connection);
+            }
+        }
+        if (reusableEngine != null) {
+            reusableEngine.load(getLayers());
+            engine = reusableEngine;
+        }
+    }
+
+    // Resets the net with weights of another scheme or seed
+    public void reset(Initializer initializer, long seed) {
+        this.initializer = initializer;
+        this.seed = seed;
+        reset();
+    }
+
+    // Starts the new optimizer without state, the weights trained so far are kept
+    public void setOptimizer(Optimizer optimizer) {
+        if (engine != null) {
+            engine.writeBack(getLayers());
+            engine = null;
+        }
+        this.optimizer = optimizer;
+        if (optimizer instanceof Sgd) {
+            optimizerState = null;
+        } else {
+            int neurons = 0;
+            for (Neuron[] nodes : initialNodes) {
+                neurons += nodes.length;
+            }
+            optimizerState = new OptimizerState(optimizer, initialConnections.length, neurons);
+        }
+    }
+
+    public Optimizer getOptimizer() {
+        return optimizer;
+    }
+
+    public Initializer getInitializer() {
+        return initializer;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    // Continues the sequence of the seed, a deserialized net starts it anew
+    private SplittableRandom getRandom() {
+        if (random == null) {
+            random = new SplittableRandom(seed);
+        }
+        return random;
     }
 
     public double[] predict(double[] input) {
+        if (useArrayEngine || useFloatPrecision) {
+            double[] output = new double[outputLayer.nodes.size()];
+            predict(input, output);
+            return output;
+        }
+        long startTime = useProfiling ? System.nanoTime() : 0;
+        double[] output = predictOnGraph(input);
+        if (useProfiling) {
+            getProfile().recordPrediction(System.nanoTime() - startTime);
+        }
+        return output;
+    }
+
+    // Thread-safe prediction into a caller-owned array. Runs on the array engine with per-thread buffers
+    // and leaves the net unchanged, so it can serve concurrent callers.
+    public void predict(double[] input, double[] output) {
+        long startTime = useProfiling ? System.nanoTime() : 0;
+        getEngine().predict(input, output);
+        if (useProfiling) {
+            getProfile().recordPrediction(System.nanoTime() - startTime);
+        }
+    }
+
+    // Predicts all inputs in parallel, see predict(double[], double[]). Not recorded in the profile,
+    // the samples of a chunk are predicted together and have no latency of their own.
+    public double[][] predictBatch(double[][] inputs) {
+        Engine engine = getEngine();
+        Dataset data = new ArrayDataset(inputs, new double[0][]);
+        int outputSize = outputLayer.nodes.size();
+        double[][] outputs = new double[inputs.length][outputSize];
+        IntStream.range(0, Engine.getNumberOfChunks(inputs.length)).parallel().forEach(chunk -> {
+            int from = chunk * ArrayEngine.INFERENCE_ROWS;
+            int samples = Math.min(ArrayEngine.INFERENCE_ROWS, inputs.length - from);
+            double[] result = engine.predict(data, from, samples);
+            for (int sample = 0; sample < samples; sample++) {
+                System.arraycopy(result, sample * outputSize, outputs[from + sample], 0, outputSize);
+            }
+        });
+        return outputs;
+    }
+
+    private double[] predictOnGraph(double[] input) {
+        forwardOnGraph(input);
+        return outputLayer.getOutput();
+    }
+
+    private void forwardOnGraph(double[] input) {
         for (int i = 0; i < inputLayer.nodes.size(); i++) {
             inputLayer.nodes.get(i).setOutput(input[i]);
         }
-        for (Layer hiddenLayer : hiddenLayers) {
-            hiddenLayer.calcInput();
+        for (int i = 0; i < hiddenLayers.size(); i++) {
+            hiddenLayers.get(i).calcInput();
         }
         outputLayer.calcInput();
-        return outputLayer.getOutput();
     }
 
     public double measureErrorOnTestData(double[][] testInputs, double[][] testTargets) {
-        double error = 0;
-        for (int sample = 0; sample < testInputs.length; sample++) {
-            double[] predicted = predict(testInputs[sample]);
-            error += getAvgOutputError(predicted, testTargets[sample]);
+        return measureErrorOnTestData(new ArrayDataset(testInputs, testTargets));
+    }
+
+    public double measureErrorOnTestData(Dataset testData) {
+        return getEngine().measureError(testData, useProfiling ? getProfile() : null);
+    }
+
+    // Stores weights and biases in the binary model format, see ModelFile. Model.load reads them back for inference
+    // in milliseconds; the pruning statistics are not stored, serialize the net to continue training it.
+    public void save(Path file) throws IOException {
+        ModelFile.write(compileBlocks(), file);
+    }
+
+    // Weights and biases layer after layer: the incoming weights of the neurons of a layer in order, then their biases.
+    // Nets with the same dimensions and pruning have the same layout, server.ParameterServer exchanges them this way.
+    public double[] getParameters() {
+        double[] parameters = new double[getNumberOfParameters()];
+        Engine source = engine != null ? engine : new ArrayEngine(compileBlocks());
+        source.getParameters(parameters);
+        return parameters;
+    }
+
+    // Replaces weights and biases in the layout of getParameters, the pruning statistics are kept
+    public void setParameters(double[] parameters) throws ParameterException {
+        if (parameters.length != getNumberOfParameters()) {
+            throw new ParameterException("The net has " + getNumberOfParameters() + " parameters, not "
+                    + parameters.length + ".");
+        }
+        if (engine != null) {
+            engine.setParameters(parameters);
+            return;
         }
-        return error / testInputs.length;
+        ArrayEngine compiled = ArrayEngine.compile(getLayers(), hiddenLayerActivation, outputLayerActivation);
+        compiled.setParameters(parameters);
+        compiled.writeBack(getLayers());
+    }
+
+    public int getNumberOfParameters() {
+        int numberOfParameters = connections.size();
+        for (int i = 1; i < dimension.length; i++) {
+            numberOfParameters += dimension[i];
+        }
+        return numberOfParameters;
+    }
+
+    // Compiled from the graph, which is up to date outside of training, so the engine in use stays untouched
+    LayerBlock[] compileBlocks() {
+        return ArrayEngine.compile(getLayers(), hiddenLayerActivation, outputLayerActivation).blocks;
     }
 
     public double getAvgOutputError(double output[], double[] target) {
@@ -95,10 +366,11 @@ public class Net implements Serializable {
         return totalError / output.length;
     }
 
+    // Fisher-Yates, swapping with any row used to favour some permutations
     public void shuffleData() {
-        Random rnd = new Random();
-        for (int i = 0; i < input.length; i++) {
-            int randomIndexToSwap = rnd.nextInt(input.length);
+        SplittableRandom rnd = getRandom();
+        for (int i = input.length - 1; i > 0; i--) {
+            int randomIndexToSwap = rnd.nextInt(i + 1);
             double[] temp = input[randomIndexToSwap];
             input[randomIndexToSwap] = input[i];
             input[i] = temp;
@@ -109,82 +381,308 @@ public class Net implements Serializable {
 
     }
 
+    // Shuffles the rows of the given arrays, see shuffleData()
     public double training(double[][] input, double[][] expected, double learningRate, int repetitions,
             boolean shuffle) {
         this.input = input;
         this.expected = expected;
+        return train(new ArrayDataset(input, expected), learningRate, repetitions, shuffle, 1, true);
+    }
+
+    // Mini-batch training: gradients are summed over batchSize samples and applied as one update.
+    // Batches always run on the array engine, a batch size of 1 is the same as the method above.
+    public double training(double[][] input, double[][] expected, double learningRate, int repetitions,
+            boolean shuffle, int batchSize) throws ParameterException {
+        checkBatchSize(batchSize);
+        this.input = input;
+        this.expected = expected;
+        return train(new ArrayDataset(input, expected), learningRate, repetitions, shuffle, batchSize, true);
+    }
+
+    // Shuffles through a permutation of the sample indices and leaves the dataset as it is
+    public double training(Dataset data, double learningRate, int repetitions, boolean shuffle) {
+        return train(data, learningRate, repetitions, shuffle, 1, false);
+    }
 
+    public double training(Dataset data, double learningRate, int repetitions, boolean shuffle, int batchSize)
+            throws ParameterException {
+        checkBatchSize(batchSize);
+        return train(data, learningRate, repetitions, shuffle, batchSize, false);
+    }
+
+    private void checkBatchSize(int batchSize) throws ParameterException {
+        if (batchSize < 1) {
+            throw new ParameterException("Batch size has to be at least 1.");
+        }
+    }
+
+    private double train(Dataset data, double learningRate, int repetitions, boolean shuffle, int batchSize,
+            boolean shuffleArrays) {
         double accuracy = 0;
-        for (int r = 0; r < repetitions; r++) {
-            if (shuffle) {
+        boolean onArrays = useArrayEngine || useFloatPrecision || batchSize > 1 || trainingThreads > 1;
+        TrainingProfile profile = useProfiling ? getProfile() : null;
+        BatchLoader loader = useAsyncLoading ? new BatchLoader(data, batchSize, shuffle, getRandom().nextLong()) : null;
+        try {
+            for (int r = 0; r < repetitions; r++) {
+                accuracy = trainEpoch(data, learningRate, shuffle, batchSize, shuffleArrays, onArrays, profile, loader, r);
+            }
+        } finally {
+            if (loader != null) {
+                loader.close();
+            }
+        }
+        return 1 - accuracy;
+    }
+
+    private double trainEpoch(Dataset data, double learningRate, boolean shuffle, int batchSize, boolean shuffleArrays,
+            boolean onArrays, TrainingProfile profile, BatchLoader loader, int epoch) {
+        EpochEvent event = new EpochEvent();
+        event.begin();
+        double sampleError = 0;
+        if (loader != null) {
+            // Waiting for the loader counts as shuffling
+            for (int samples = 0; samples < data.size(); ) {
+                long time = profile == null ? 0 : System.nanoTime();
+                BatchLoader.Block block = loader.next();
+                if (profile != null) {
+                    profile.lap(TrainingProfile.Phase.SHUFFLE, time);
+                }
+                sampleError = trainOn(block, null, learningRate, batchSize, profile);
+                samples += block.size();
+            }
+        } else {
+            int[] order = null;
+            long time = profile == null ? 0 : System.nanoTime();
+            if (shuffle && shuffleArrays) {
                 shuffleData();
+            } else if (shuffle) {
+                order = getShuffledOrder(data.size());
+            }
+            if (profile != null) {
+                profile.lap(TrainingProfile.Phase.SHUFFLE, time);
             }
-            accuracy = 0;
-            for (int sample = 0; sample < this.input.length; sample++) {
-                // Forward pass
-                double[] output = predict(this.input[sample]);
+            sampleError = trainOn(data, order, learningRate, batchSize, profile);
+        }
+        // Mean accuracy of the last sample
+        double accuracy = sampleError / outputLayer.nodes.size();
+        outputErrors.finishEpoch();
 
-                double meanError = 0;
-                // Calculate error for output layer
-                for (int node = 0; node < outputLayer.nodes.size(); node++) {
-                    Neuron outputNode = outputLayer.nodes.get(node);
-                    // Error of output node is difference between its output and the expected one
-                    meanError += Math.abs(outputNode.calcError(this.expected[sample][node]));
+        long time = profile == null ? 0 : System.nanoTime();
+        if (onArrays && engine != null) {
+            // The Pruner works on the object graph
+            engine.writeBack(getLayers());
+        } else {
+            engine = null;
+        }
+        if (profile != null) {
+            time = profile.lap(TrainingProfile.Phase.WRITE_BACK, time);
+        }
+        prune();
+        if (profile != null) {
+            profile.lap(TrainingProfile.Phase.PRUNING, time);
+        }
 
-                    // The weights delta is the product of the nodes error and the partial derivative of its output
-                    outputNode.calcDelta();
-                }
-                outputErrors.add(meanError);
-
-                // Backpropagate the error to hidden layers
-                for (int layer = hiddenLayers.size() - 1; layer >= 0; layer--) {
-                    Layer hiddenLayer = hiddenLayers.get(layer);
-                    for (Neuron hiddenNode : hiddenLayer.nodes) {
-                        hiddenNode.resetError();
-                        for (Connection edge : hiddenNode.outgoing) {
-                            // The error of the hidden node sums up with the weights and errors of the connected nodes
-                            hiddenNode.addToError(edge.getWeight() * edge.targetNode.getError());
-
-                        }
-                        // Its weight delta is calculated similar to the output nodes
-                        hiddenNode.calcDelta();
-                    }
-                }
+        if (event.shouldCommit()) {
+            event.epoch = epoch;
+            event.samples = data.size();
+            event.batchSize = batchSize;
+            event.engine = useFloatPrecision ? "float" : onArrays ? "array" : "graph";
+            event.outputError = accuracy;
+            event.connections = connections.size();
+            event.commit();
+        }
+        return accuracy;
+    }
+
+    // Trains the samples of data in the given order, or in their own order if it is null
+    private double trainOn(Dataset data, int[] order, double learningRate, int batchSize, TrainingProfile profile) {
+        if (trainingThreads > 1 && !useFloatPrecision) {
+            return trainInParallel(data, order, learningRate, batchSize);
+        } else if (batchSize > 1) {
+            return getEngine().trainBatches(data, order, learningRate, batchSize, outputErrors, profile);
+        }
+        return trainSamples(data, order, learningRate, profile);
+    }
+
+    // Fisher-Yates shuffle of the sample indices
+    private int[] getShuffledOrder(int size) {
+        if (sampleOrder == null || sampleOrder.length != size) {
+            sampleOrder = new int[size];
+            for (int i = 0; i < size; i++) {
+                sampleOrder[i] = i;
+            }
+        }
+        SplittableRandom rnd = getRandom();
+        for (int i = size - 1; i > 0; i--) {
+            int randomIndexToSwap = rnd.nextInt(i + 1);
+            int temp = sampleOrder[randomIndexToSwap];
+            sampleOrder[randomIndexToSwap] = sampleOrder[i];
+            sampleOrder[i] = temp;
+        }
+        return sampleOrder;
+    }
+
+    // The methods below train one epoch and return the summed output error of the last sample
+
+    private double trainSamples(Dataset data, int[] order, double learningRate, TrainingProfile profile) {
+        double sampleError = 0;
+        if (useArrayEngine || useFloatPrecision) {
+            sampleError = getEngine().trainSamples(data, order, learningRate, outputErrors, profile);
+        } else {
+            double[] sampleInput = new double[data.getInputSize()];
+            double[] sampleTarget = new double[data.getTargetSize()];
+            for (int sample = 0; sample < data.size(); sample++) {
+                int index = order == null ? sample : order[sample];
+                data.getInput(index, sampleInput, 0);
+                data.getTarget(index, sampleTarget, 0);
+                sampleError = trainSampleOnGraph(sampleInput, sampleTarget, learningRate, profile);
+            }
+        }
+        return sampleError;
+    }
+
+    private double trainInParallel(Dataset data, int[] order, double learningRate, int batchSize) {
+        if (useHogwild && optimizerState != null) {
+            throw new IllegalStateException("Hogwild training needs plain SGD, not " + optimizer);
+        }
+        if (parallelTrainer == null) {
+            parallelTrainer = new ParallelTrainer(trainingThreads);
+        }
+        double[] sampleErrors = parallelTrainer.trainEpoch((ArrayEngine) getEngine(), data, order, learningRate, batchSize, useHogwild);
+        for (double sampleError : sampleErrors) {
+            outputErrors.add(sampleError);
+        }
+        return sampleErrors.length == 0 ? 0 : sampleErrors[sampleErrors.length - 1];
+    }
+
+    private double trainSampleOnGraph(double[] input, double[] expected, double learningRate, TrainingProfile profile) {
+        long time = profile == null ? 0 : System.nanoTime();
+        // Forward pass
+        forwardOnGraph(input);
+        if (profile != null) {
+            time = profile.lap(TrainingProfile.Phase.FORWARD, time);
+        }
+
+        double meanError = 0;
+        // Calculate error for output layer
+        for (int node = 0; node < outputLayer.nodes.size(); node++) {
+            Neuron outputNode = outputLayer.nodes.get(node);
+            // Error of output node is difference between its output and the expected one
+            meanError += Math.abs(outputNode.calcError(expected[node]));
+
+            // The weights delta is the product of the nodes error and the partial derivative of its output
+            outputNode.calcDelta();
+        }
+        outputErrors.add(meanError);
+        if (profile != null) {
+            time = profile.lap(TrainingProfile.Phase.OUTPUT_ERROR, time);
+        }
+
+        // Backpropagate the error to hidden layers
+        for (int layer = hiddenLayers.size() - 1; layer >= 0; layer--) {
+            Layer hiddenLayer = hiddenLayers.get(layer);
+            for (int node = 0; node < hiddenLayer.nodes.size(); node++) {
+                Neuron hiddenNode = hiddenLayer.nodes.get(node);
+                hiddenNode.resetError();
+                for (int i = 0; i < hiddenNode.outgoing.size(); i++) {
+                    Connection edge = hiddenNode.outgoing.get(i);
+                    // The error of the hidden node sums up with the weights and errors of the connected nodes
+                    hiddenNode.addToError(edge.getWeight() * edge.targetNode.getError());
 
-                // Weights have to update after backpropagation
-                updateWeights(learningRate, outputLayer);
-                for (Layer hiddenLayer : hiddenLayers) {
-                    updateWeights(learningRate, hiddenLayer);
-                }
-                // Calculate mean accuracy
-                accuracy = 0;
-                for (int j = 0; j < output.length; j++) {
-                    accuracy += Math.abs(this.expected[sample][j] - output[j]);
                 }
-                accuracy /= output.length;
+                // Its weight delta is calculated similar to the output nodes
+                hiddenNode.calcDelta();
             }
-            prune();
+        }
 
+        if (profile != null) {
+            time = profile.lap(TrainingProfile.Phase.BACKPROPAGATION, time);
         }
-        return 1 - accuracy;
+
+        // Weights have to update after backpropagation
+        double rate = optimizerState == null ? learningRate : optimizerState.nextRate(learningRate);
+        updateWeights(rate, outputLayer);
+        for (int i = 0; i < hiddenLayers.size(); i++) {
+            updateWeights(rate, hiddenLayers.get(i));
+        }
+        if (profile != null) {
+            profile.lap(TrainingProfile.Phase.WEIGHT_UPDATE, time);
+        }
+        return meanError;
     }
 
+    // Every pruning method marks the connections it removes, which are unlinked in one pass over the connections
+    // before the next method looks at the graph
     public void prune() {
+        if (!useActivationPruning && !useWeightImpactPruning && !useWeightStabilityPruning) {
+            return;
+        }
+        PruningEvent event = new PruningEvent();
+        event.begin();
+        int connectionsBefore = connections.size();
+        pruner.startPruning(connections);
         if (useActivationPruning) {
-            this.hiddenLayers = pruner.activationPruning(hiddenLayers, connections, hiddenLayerActivation);
-            this.connections = pruner.prunedConnections;
+            pruner.markActivationPruning(hiddenLayers, hiddenLayerActivation);
+            connections = pruner.compact(connections);
+            for (int i = 0; i < hiddenLayers.size(); i++) {
+                dimension[i + 1] = hiddenLayers.get(i).nodes.size();
+            }
         }
         if (useWeightImpactPruning) {
-            this.connections = pruner.weightImpactPruning(hiddenLayers, connections);
+            pruner.markWeightImpactPruning(hiddenLayers);
+            connections = pruner.compact(connections);
         }
         if (useWeightStabilityPruning) {
-            this.connections = pruner.weightStabilityPruning(hiddenLayers, connections);
+            pruner.markWeightStabilityPruning(hiddenLayers);
+            connections = pruner.compact(connections);
+        }
+        // Rebuilt from the pruned graph on next use, see ArrayEngine.createBlock for the layout of pruned layers
+        engine = null;
+        if (event.shouldCommit()) {
+            event.methods = (useActivationPruning ? "activation " : "") + (useWeightImpactPruning ? "weight impact " : "")
+                    + (useWeightStabilityPruning ? "weight stability" : "");
+            event.methods = event.methods.trim();
+            event.ratio = pruner.getRatio();
+            event.connectionsBefore = connectionsBefore;
+            event.connectionsAfter = connections.size();
+            event.commit();
         }
     }
 
+    private Engine getEngine() {
+        if (engine != null && engine instanceof FloatEngine != useFloatPrecision) {
+            // Precision changed, recompiled from the graph
+            engine.writeBack(getLayers());
+            engine = null;
+        }
+        if (engine == null) {
+            if (useFloatPrecision) {
+                engine = FloatEngine.compile(getLayers(), hiddenLayerActivation, outputLayerActivation, optimizerState);
+            } else {
+                engine = ArrayEngine.compile(getLayers(), hiddenLayerActivation, outputLayerActivation, optimizerState);
+            }
+        }
+        return engine;
+    }
+
+    final ArrayList<Layer> getLayers() {
+        ArrayList<Layer> layers = new ArrayList<>();
+        layers.add(inputLayer);
+        layers.addAll(hiddenLayers);
+        layers.add(outputLayer);
+        return layers;
+    }
+
+    // Indexed loops, iterators would allocate on every sample
     private void updateWeights(double learningRate, Layer layer) {
-        for (Neuron node : layer.nodes) {
-            for (Connection edge : node.incoming) {
+        if (optimizerState != null) {
+            updateWeights(optimizerState, learningRate, layer);
+            return;
+        }
+        for (int i = 0; i < layer.nodes.size(); i++) {
+            Neuron node = layer.nodes.get(i);
+            for (int j = 0; j < node.incoming.size(); j++) {
+                Connection edge = node.incoming.get(j);
                 double currentWeight = edge.getWeight();
                 edge.setWeight(currentWeight - learningRate * node.getDelta() * edge.sourceNode.getOutput());
             }
@@ -192,11 +690,32 @@ public class Net implements Serializable {
         }
     }
 
-    // Adds connections between every node of a layer with every node of the following layer
+    private void updateWeights(OptimizerState state, double rate, Layer layer) {
+        if (state.weightSteps == null) {
+            state.weightSteps = new double[state.weights[0].length];
+            state.biasSteps = new double[state.biases[0].length];
+        }
+        double[] weightSteps = state.weightSteps;
+        double[] biasSteps = state.biasSteps;
+        for (int i = 0; i < layer.nodes.size(); i++) {
+            Neuron node = layer.nodes.get(i);
+            for (int j = 0; j < node.incoming.size(); j++) {
+                Connection edge = node.incoming.get(j);
+                weightSteps[edge.index] = node.getDelta() * edge.sourceNode.getOutput();
+                state.optimizer.steps(weightSteps, state.weights, edge.index, edge.index + 1, rate);
+                edge.setWeight(edge.getWeight() - weightSteps[edge.index]);
+            }
+            biasSteps[node.index] = node.getDelta();
+            state.optimizer.steps(biasSteps, state.biases, node.index, node.index + 1, rate);
+            node.setBias(node.getBias() - biasSteps[node.index]);
+        }
+    }
+
+    // Adds connections between every node of a layer with every node of the following layer, reset() sets their weights
     private void addConnections() {
         for (Neuron inputNode : inputLayer.nodes) {
             for (Neuron hiddenNode : hiddenLayers.get(0).nodes) {
-                Connection connection = new Connection(inputNode, hiddenNode);
+                Connection connection = new Connection(inputNode, hiddenNode, 0);
                 inputNode.outgoing.add(connection);
                 hiddenNode.incoming.add(connection);
                 connections.add(connection);
@@ -205,7 +724,7 @@ public class Net implements Serializable {
         for (int i = 1; i < hiddenLayers.size(); i++) {
             for (Neuron hiddenNode : hiddenLayers.get(i).nodes) {
                 for (Neuron previousNode : hiddenLayers.get(i - 1).nodes) {
-                    Connection connection = new Connection(previousNode, hiddenNode);
+                    Connection connection = new Connection(previousNode, hiddenNode, 0);
                     previousNode.outgoing.add(connection);
                     hiddenNode.incoming.add(connection);
                     connections.add(connection);
@@ -214,7 +733,7 @@ public class Net implements Serializable {
         }
         for (Neuron outputNode : outputLayer.nodes) {
             for (Neuron hiddenNode : hiddenLayers.get(hiddenLayers.size() - 1).nodes) {
-                Connection connection = new Connection(hiddenNode, outputNode);
+                Connection connection = new Connection(hiddenNode, outputNode, 0);
                 hiddenNode.outgoing.add(connection);
                 outputNode.incoming.add(connection);
                 connections.add(connection);
@@ -222,7 +741,43 @@ public class Net implements Serializable {
         }
     }
 
+    // Training on more than one thread splits every batch across a ForkJoinPool, see ParallelTrainer. The pool is
+    // created on first use and shut down when the number of threads changes.
+    public void setTrainingThreads(int threads) throws ParameterException {
+        if (threads < 1) {
+            throw new ParameterException("At least one training thread is needed.");
+        }
+        if (parallelTrainer != null && threads != trainingThreads) {
+            parallelTrainer.close();
+            parallelTrainer = null;
+        }
+        trainingThreads = threads;
+    }
+
+    // Collected while useProfiling is set, reset it to start a new measurement
+    public TrainingProfile getProfile() {
+        if (profile == null) {
+            profile = new TrainingProfile();
+        }
+        return profile;
+    }
+
+    public ErrorHistory getErrorHistory() {
+        return outputErrors;
+    }
+
+    public int getTrainingThreads() {
+        return trainingThreads;
+    }
+
+    public int[] getDimension() {
+        return dimension.clone();
+    }
+
     public int getNumberOfConnections() {
+        if (useArrayEngine || useFloatPrecision) {
+            return getEngine().getNumberOfConnections();
+        }
         return connections.size();
     }
 }
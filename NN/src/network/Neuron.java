@@ -18,6 +18,9 @@ public class Neuron implements Serializable {
 
     private double inactiveTransfers;
 
+    // Position in the net as it was built, see OptimizerState
+    int index;
+
     public Neuron(Activation activationFunction, int initialBias) {
         outgoing = new ArrayList<>();
         incoming = new ArrayList<>();
@@ -39,14 +42,14 @@ public class Neuron implements Serializable {
     }
 
     public double getDerivative() {
-        return this.activationFunction.derivative(activation);
+        return this.activationFunction.derivative(activation, output);
     }
 
     public void transfer() {
         output = activationFunction.phi(activation);
 
         if (this.activationFunction instanceof Relu) {
-            if (output <= 0.01) {
+            if (output <= Relu.INACTIVE_OUTPUT) {
                 inactiveTransfers++;
             }
         } else {
@@ -66,7 +69,7 @@ public class Neuron implements Serializable {
         return this.error;
     }
 
-    public Double getActivationSum() {
+    public double getActivationSum() {
         return this.activationSum;
     }
 
@@ -86,7 +89,7 @@ public class Neuron implements Serializable {
         return this.delta;
     }
 
-    public Double getInactiveTransfers() {
+    public double getInactiveTransfers() {
         return this.inactiveTransfers;
     }
 
@@ -94,4 +97,27 @@ public class Neuron implements Serializable {
         return this.bias;
     }
 
+    // Back to the state of a new neuron, used by Net.reset
+    void reset(double bias) {
+        this.bias = bias;
+        activation = 0;
+        activationSum = 0;
+        delta = 0;
+        output = 0;
+        error = 0;
+        inactiveTransfers = 0;
+    }
+
+    void setBias(double bias) {
+        this.bias = bias;
+    }
+
+    void setActivationSum(double activationSum) {
+        this.activationSum = activationSum;
+    }
+
+    void setInactiveTransfers(double inactiveTransfers) {
+        this.inactiveTransfers = inactiveTransfers;
+    }
+
 }
@@ -0,0 +1,21 @@
+package network;
+
+import java.io.Serializable;
+
+// Turns the gradient of a weight or bias into the step that is subtracted from it. Optimizers with state keep
+// getStateSize() values per weight in flat arrays aligned with the weights, state[k][i] belongs to weight i.
+// Net keeps these arrays per connection and neuron of the graph as it was built, so the state of the remaining
+// weights is untouched by pruning, and the engines copy them into their blocks like the weights.
+public abstract class Optimizer implements Serializable {
+
+    public abstract int getStateSize();
+
+    // Learning rate of the given update, counted from 1 over the whole training of the net
+    public double getRate(double learningRate, long update) {
+        return learningRate;
+    }
+
+    // Turns gradients[from] to gradients[to - 1] into the steps that are subtracted from the weights with these indices.
+    // A whole layer at a time, so the loops can be vectorized.
+    public abstract void steps(double[] gradients, double[][] state, int from, int to, double rate);
+}
@@ -0,0 +1,37 @@
+package network;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+// State of the optimizer of a net, indexed by Connection.index and Neuron.index, and the number of updates so far
+final class OptimizerState implements Serializable {
+
+    final Optimizer optimizer;
+    final double[][] weights;
+    final double[][] biases;
+    long updates;
+    // Steps of the object graph, which passes one connection or neuron at a time to the optimizer
+    transient double[] weightSteps;
+    transient double[] biasSteps;
+
+    OptimizerState(Optimizer optimizer, int connections, int neurons) {
+        this.optimizer = optimizer;
+        this.weights = new double[optimizer.getStateSize()][connections];
+        this.biases = new double[optimizer.getStateSize()][neurons];
+    }
+
+    // Rate of the next update
+    double nextRate(double learningRate) {
+        return optimizer.getRate(learningRate, ++updates);
+    }
+
+    void clear() {
+        for (double[] values : weights) {
+            Arrays.fill(values, 0);
+        }
+        for (double[] values : biases) {
+            Arrays.fill(values, 0);
+        }
+        updates = 0;
+    }
+}
@@ -0,0 +1,168 @@
+package network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Data-parallel training on the array engine.
+// Synchronous mode splits every batch across the workers. Each worker computes gradients against the
+// unchanged weights into its own Workspace, the gradients are summed up and applied as one update.
+// Hogwild mode gives every worker its own share of the samples and lets it update the shared weights
+// without any synchronisation, which is faster but not deterministic.
+// The pool lives as long as the trainer, Net closes it when the number of threads changes.
+class ParallelTrainer {
+
+    private final int threads;
+    private final ForkJoinPool pool;
+
+    private ArrayEngine engine;
+    private Workspace[] workspaces;
+    private double[] sampleErrors;
+
+    ParallelTrainer(int threads) {
+        this.threads = threads;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    int getThreads() {
+        return threads;
+    }
+
+    void close() {
+        pool.shutdown();
+    }
+
+    // Returns the summed absolute output error of every sample in the order of training
+    double[] trainEpoch(ArrayEngine engine, Dataset data, int[] order, double learningRate, int batchSize, boolean hogwild) {
+        prepare(engine, data.size(), hogwild ? batchSize : (batchSize + threads - 1) / threads);
+        if (hogwild) {
+            trainHogwild(data, order, learningRate, batchSize);
+        } else {
+            for (int from = 0; from < data.size(); from += batchSize) {
+                trainBatch(data, order, from, Math.min(batchSize, data.size() - from), learningRate);
+            }
+        }
+        return sampleErrors;
+    }
+
+    private void prepare(ArrayEngine engine, int numberOfSamples, int rows) {
+        if (this.engine != engine || workspaces[0].rows != rows) {
+            this.engine = engine;
+            workspaces = new Workspace[threads];
+            for (int i = 0; i < threads; i++) {
+                workspaces[i] = new Workspace(engine.blocks, rows);
+            }
+        }
+        if (sampleErrors == null || sampleErrors.length != numberOfSamples) {
+            sampleErrors = new double[numberOfSamples];
+        }
+    }
+
+    private void trainBatch(Dataset data, int[] order, int from, int samples, double learningRate) {
+        int chunk = (samples + threads - 1) / threads;
+        List<Callable<Void>> tasks = new ArrayList<>();
+        int workers = 0;
+        for (int start = from; start < from + samples; start += chunk) {
+            Workspace ws = workspaces[workers++];
+            int begin = start;
+            int count = Math.min(chunk, from + samples - start);
+            tasks.add(() -> {
+                engine.load(ws, data, order, begin, count);
+                engine.computeGradients(ws, count);
+                System.arraycopy(ws.sampleErrors, 0, sampleErrors, begin, count);
+                return null;
+            });
+        }
+        run(tasks);
+        reduce(workers);
+
+        Workspace sum = workspaces[0];
+        double rate = engine.nextRate(learningRate);
+        for (int i = 0; i < engine.blocks.length; i++) {
+            LayerBlock block = engine.blocks[i];
+            for (int worker = 0; worker < workers; worker++) {
+                block.addStatistics(workspaces[worker].inactiveTransfers[i], workspaces[worker].activationSums[i]);
+            }
+            block.applyGradients(rate, samples, sum.weightGradients[i], sum.biasGradients[i]);
+        }
+    }
+
+    // Sums the gradients of all workers into the first workspace, split into one range of weights per thread
+    private void reduce(int workers) {
+        if (workers == 1) {
+            return;
+        }
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < engine.blocks.length; i++) {
+            int block = i;
+            int length = engine.blocks[i].weights.length;
+            int chunk = (length + threads - 1) / threads;
+            for (int start = 0; start < length; start += chunk) {
+                int begin = start;
+                int end = Math.min(length, start + chunk);
+                tasks.add(() -> {
+                    double[] sum = workspaces[0].weightGradients[block];
+                    for (int worker = 1; worker < workers; worker++) {
+                        double[] gradients = workspaces[worker].weightGradients[block];
+                        for (int j = begin; j < end; j++) {
+                            sum[j] += gradients[j];
+                            gradients[j] = 0;
+                        }
+                    }
+                    return null;
+                });
+            }
+            double[] sum = workspaces[0].biasGradients[i];
+            for (int worker = 1; worker < workers; worker++) {
+                double[] gradients = workspaces[worker].biasGradients[i];
+                for (int j = 0; j < sum.length; j++) {
+                    sum[j] += gradients[j];
+                    gradients[j] = 0;
+                }
+            }
+        }
+        run(tasks);
+    }
+
+    private void trainHogwild(Dataset data, int[] order, double learningRate, int batchSize) {
+        int share = (data.size() + threads - 1) / threads;
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int worker = 0; worker < threads && worker * share < data.size(); worker++) {
+            Workspace ws = workspaces[worker];
+            int begin = worker * share;
+            int end = Math.min(data.size(), begin + share);
+            tasks.add(() -> {
+                for (int from = begin; from < end; from += batchSize) {
+                    int samples = Math.min(batchSize, end - from);
+                    engine.load(ws, data, order, from, samples);
+                    if (samples == 1) {
+                        engine.forward(ws);
+                        sampleErrors[from] = engine.backward(ws);
+                        engine.updateWeights(ws, learningRate);
+                    } else {
+                        engine.trainBatch(ws, samples, learningRate);
+                        System.arraycopy(ws.sampleErrors, 0, sampleErrors, from, samples);
+                    }
+                }
+                return null;
+            });
+        }
+        run(tasks);
+    }
+
+    private void run(List<Callable<Void>> tasks) {
+        for (Future<Void> future : pool.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package network;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 public class Pruner implements Serializable {
@@ -9,6 +10,15 @@ public class Pruner implements Serializable {
     private double ratio = 0.2;
     public ArrayList<Connection> prunedConnections;
 
+    // Pruning only marks connections as removed in a mask indexed by Connection.id and neurons in a mask indexed
+    // by Neuron.index. compact() then unlinks all of them in one pass over the connections and the affected lists.
+    private final BitSet removed = new BitSet();
+    private final BitSet removedNeurons = new BitSet();
+    private final BitSet touchedNeurons = new BitSet();
+
+    private transient double[] scores;
+    private transient int[] selected;
+
     public void setRatio(double pruningRatio) throws ParameterException {
         if (pruningRatio >= 1) {
             throw new ParameterException("Ratio cannot be 1 or higher. It would remove all connections of the neural net.");
@@ -20,62 +30,160 @@ public class Pruner implements Serializable {
         return ratio;
     }
 
+    // New pruner with the same configuration, for nets that are trained at the same time
+    public Pruner copy() {
+        Pruner pruner = new Pruner();
+        pruner.ratio = ratio;
+        return pruner;
+    }
+
+    // Numbers the connections by their position in the list, call before marking
+    void startPruning(ArrayList<Connection> connections) {
+        for (int i = 0; i < connections.size(); i++) {
+            connections.get(i).id = i;
+        }
+        removed.clear();
+        removedNeurons.clear();
+    }
+
+    // Removes the marked connections from the list of connections and from the incoming and outgoing lists of
+    // their neurons, every affected list is compacted once. The order of the others is kept.
+    ArrayList<Connection> compact(ArrayList<Connection> connections) {
+        ArrayList<Neuron> touched = new ArrayList<>();
+        touchedNeurons.clear();
+        int kept = 0;
+        for (int i = 0; i < connections.size(); i++) {
+            Connection connection = connections.get(i);
+            if (!removed.get(connection.id)) {
+                connections.set(kept++, connection);
+                continue;
+            }
+            touch(connection.sourceNode, touched);
+            touch(connection.targetNode, touched);
+        }
+        connections.subList(kept, connections.size()).clear();
+        for (Neuron node : touched) {
+            node.incoming.removeIf(connection -> removed.get(connection.id));
+            node.outgoing.removeIf(connection -> removed.get(connection.id));
+        }
+        removed.clear();
+        return connections;
+    }
+
+    private void touch(Neuron node, ArrayList<Neuron> touched) {
+        if (!touchedNeurons.get(node.index)) {
+            touchedNeurons.set(node.index);
+            touched.add(node);
+        }
+    }
+
     public ArrayList<Layer> activationPruning(ArrayList<Layer> hiddenLayers, ArrayList<Connection> connections, Activation activation) {
+        startPruning(connections);
+        markActivationPruning(hiddenLayers, activation);
+        prunedConnections = compact(connections);
+        return hiddenLayers;
+    }
 
-        if (activation instanceof Relu) {
-            for (int j = 0; j < hiddenLayers.size() - 1; j++) {
-                Layer hiddenLayer = hiddenLayers.get(j);
-                // inactive transfers descending
-                hiddenLayer.nodes.sort((a, b) -> b.getInactiveTransfers().compareTo(a.getInactiveTransfers()));
-                for (int i = 0; i < hiddenLayer.nodes.size() * getRatio() - 1; i++) {
-                    connections.removeAll(hiddenLayer.nodes.get(i).incoming);
-                    hiddenLayer.nodes.remove(hiddenLayer.nodes.get(i));
-                }
+    // The counters of a layer are copied into a primitive array and only the neurons that are removed
+    // are selected. The neurons that are left keep their order.
+    void markActivationPruning(ArrayList<Layer> hiddenLayers, Activation activation) {
+        boolean relu = activation instanceof Relu;
+        for (int j = 0; j < hiddenLayers.size() - 1; j++) {
+            Layer hiddenLayer = hiddenLayers.get(j);
+            int size = hiddenLayer.nodes.size();
+            double[] scores = getScores(size);
+            for (int i = 0; i < size; i++) {
+                Neuron node = hiddenLayer.nodes.get(i);
+                // Highest ranked first: most inactive transfers for Relu, highest activation sum otherwise
+                scores[i] = relu ? node.getInactiveTransfers() : node.getActivationSum();
             }
-        } else {
-            for (int j = 0; j < hiddenLayers.size() - 1; j++) {
-                Layer hiddenLayer = hiddenLayers.get(j);
-                // activation value ascending
-                hiddenLayer.nodes.sort((a, b) -> b.getActivationSum().compareTo(a.getActivationSum()));
-                for (int i = 0; i < hiddenLayer.nodes.size() * getRatio() - 1; i++) {
-                    connections.removeAll(hiddenLayer.nodes.get(i).incoming);
-                    hiddenLayer.nodes.remove(hiddenLayer.nodes.get(i));
-                }
+            // Neurons used to be removed from the sorted layer while walking through it, so every second one of
+            // the highest ranked was removed until the shrinking layer was small enough. Same selection here.
+            int victims = 0;
+            while (victims < (size - victims) * getRatio() - 1) {
+                victims++;
+            }
+            int ranked = Math.max(0, 2 * victims - 1);
+            int[] selected = getSelected(ranked);
+            TopK.selectLargest(scores, size, ranked, selected);
+            for (int i = 0; i < victims; i++) {
+                markRemoved(hiddenLayer.nodes.get(selected[2 * i]));
             }
+            hiddenLayer.nodes.removeIf(node -> removedNeurons.get(node.index));
         }
-        prunedConnections = connections;
-        return hiddenLayers;
     }
 
-    public ArrayList<Connection> weightStabilityPruning(List<Layer> hiddenLayers, ArrayList<Connection> connections) {
+    // Marks a neuron together with all of its incoming and outgoing connections,
+    // so the layer and the following layer both become smaller
+    private void markRemoved(Neuron node) {
+        removedNeurons.set(node.index);
+        for (Connection connection : node.incoming) {
+            removed.set(connection.id);
+        }
+        for (Connection connection : node.outgoing) {
+            removed.set(connection.id);
+        }
+    }
 
-        ArrayList<Connection> connectionsToBeRemoved = new ArrayList<>();
+    public ArrayList<Connection> weightStabilityPruning(List<Layer> hiddenLayers, ArrayList<Connection> connections) {
+        startPruning(connections);
+        markWeightStabilityPruning(hiddenLayers);
+        return compact(connections);
+    }
 
+    void markWeightStabilityPruning(List<Layer> hiddenLayers) {
         for (int i = 0; i < hiddenLayers.size() - 1; i++) {
             Layer hiddenLayer = hiddenLayers.get(i);
             for (Neuron node : hiddenLayer.nodes) {
+                int size = node.outgoing.size();
+                int count = Math.max(0, (int) (size * getRatio() - 1));
+                double[] scores = getScores(size);
+                for (int j = 0; j < size; j++) {
+                    scores[j] = node.outgoing.get(j).getInstability();
+                }
                 // instability descending
-                node.outgoing.sort((a, b) -> b.getInstability().compareTo(a.getInstability()));
-                connectionsToBeRemoved.addAll(node.outgoing.subList(0, (int) (node.outgoing.size() * getRatio() - 1)));
+                int[] selected = getSelected(count);
+                TopK.selectLargest(scores, size, count, selected);
+                for (int j = 0; j < count; j++) {
+                    removed.set(node.outgoing.get(selected[j]).id);
+                }
             }
         }
-        connections.removeAll(connectionsToBeRemoved);
-        return connections;
     }
 
     public ArrayList<Connection> weightImpactPruning(List<Layer> hiddenLayers, ArrayList<Connection> connections) {
+        startPruning(connections);
+        markWeightImpactPruning(hiddenLayers);
+        return compact(connections);
+    }
 
-        ArrayList<Connection> connectionsToBeRemoved = new ArrayList<>();
-
+    void markWeightImpactPruning(List<Layer> hiddenLayers) {
         for (int i = 0; i < hiddenLayers.size() - 1; i++) {
             Layer hiddenLayer = hiddenLayers.get(i);
             for (Neuron node : hiddenLayer.nodes) {
-                // weight ascending
-                node.outgoing.sort((a, b) -> a.getWeight().compareTo(a.getWeight()));
-                connectionsToBeRemoved.addAll(node.outgoing.subList(0, (int) (node.outgoing.size() * getRatio() - 1)));
+                // The ranking by weight used to compare every connection with itself, so the sort never changed
+                // the order and the first connections were removed. Kept like this to stay comparable with
+                // earlier results, without sorting.
+                int count = Math.max(0, (int) (node.outgoing.size() * getRatio() - 1));
+                for (int j = 0; j < count; j++) {
+                    removed.set(node.outgoing.get(j).id);
+                }
             }
         }
-        connections.removeAll(connectionsToBeRemoved);
-        return connections;
+    }
+
+    // Scratch arrays for the rankings, grown when needed
+    private double[] getScores(int length) {
+        if (scores == null || scores.length < length) {
+            scores = new double[length];
+        }
+        return scores;
+    }
+
+    private int[] getSelected(int length) {
+        if (selected == null || selected.length < length) {
+            selected = new int[length];
+        }
+        return selected;
     }
 }
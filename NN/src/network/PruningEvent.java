@@ -0,0 +1,27 @@
+package network;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// JFR event for every pruning pass of Net.prune
+@Name("network.Pruning")
+@Label("Pruning")
+@Category("Neural Net")
+@Description("One pass of the enabled pruning methods over the net")
+class PruningEvent extends Event {
+
+    @Label("Methods")
+    String methods;
+
+    @Label("Ratio")
+    double ratio;
+
+    @Label("Connections Before")
+    int connectionsBefore;
+
+    @Label("Connections After")
+    int connectionsAfter;
+}
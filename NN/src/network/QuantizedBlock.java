@@ -0,0 +1,100 @@
+package network;
+
+// Inference-only version of a LayerBlock with int8 weights. The weights of every neuron are scaled symmetrically
+// by their largest magnitude, the inputs of the layer by a range calibrated on sample data. The products are summed
+// as int32 and turned back into a double net input with one multiplication per neuron.
+class QuantizedBlock {
+
+    private static final Kernels kernels = Kernels.get();
+    static final double MAX_VALUE = 127;
+
+    final int inputSize;
+    final int size;
+    final Activation activationFunction;
+
+    // Same layout as in LayerBlock, null for dense blocks
+    final int[] rowStart;
+    final int[] columns;
+    // Pruned weights of a dense block are zero after quantization too
+    final int numberOfConnections;
+
+    final byte[] weights;
+    // net = sum * scales[row] + biases[row], the scale combines the weight scale of the neuron and the input scale
+    final double[] scales;
+    final double[] biases;
+    final double inputScale;
+
+    QuantizedBlock(LayerBlock block, double inputRange) {
+        this.inputSize = block.inputSize;
+        this.size = block.size;
+        this.activationFunction = block.activationFunction;
+        this.rowStart = block.rowStart;
+        this.columns = block.columns;
+        this.numberOfConnections = block.getNumberOfConnections();
+        this.biases = block.biases.clone();
+        this.inputScale = inputRange > 0 ? inputRange / MAX_VALUE : 1;
+
+        weights = new byte[block.weights.length];
+        scales = new double[size];
+        for (int row = 0; row < size; row++) {
+            int from = isSparse() ? rowStart[row] : row * inputSize;
+            int to = isSparse() ? rowStart[row + 1] : from + inputSize;
+            double range = 0;
+            for (int i = from; i < to; i++) {
+                range = Math.max(range, Math.abs(block.weights[i]));
+            }
+            double weightScale = range > 0 ? range / MAX_VALUE : 1;
+            for (int i = from; i < to; i++) {
+                weights[i] = (byte) Math.round(block.weights[i] / weightScale);
+            }
+            scales[row] = weightScale * inputScale;
+        }
+    }
+
+    boolean isSparse() {
+        return columns != null;
+    }
+
+    int getNumberOfConnections() {
+        return numberOfConnections;
+    }
+
+    // Rounds the inputs of a batch to multiples of inputScale, values outside of the calibrated range are clamped
+    void quantize(int samples, double[] input, byte[] quantized) {
+        double factor = 1 / inputScale;
+        // Math.rint and the clamping in double keep the loop free of branches, so the JIT vectorizes it
+        for (int i = 0; i < samples * inputSize; i++) {
+            quantized[i] = (byte) (int) Math.max(-MAX_VALUE, Math.min(MAX_VALUE, Math.rint(input[i] * factor)));
+        }
+    }
+
+    // Forward pass of a batch stored row after row like in LayerBlock.forward, sums is scratch space of the outputs' size
+    void forward(int samples, byte[] input, int[] sums, double[] outputs) {
+        for (int row = 0; row < size; row++) {
+            int sample = 0;
+            if (columns == null) {
+                int offset = row * inputSize;
+                for (; sample + 3 < samples; sample += 4) {
+                    kernels.dot4(weights, offset, input, sample * inputSize, inputSize, inputSize, sums,
+                            sample * size + row, size);
+                }
+                for (; sample < samples; sample++) {
+                    sums[sample * size + row] = kernels.dot(weights, offset, input, sample * inputSize, inputSize);
+                }
+            } else {
+                for (; sample < samples; sample++) {
+                    int in = sample * inputSize;
+                    int sum = 0;
+                    for (int i = rowStart[row]; i < rowStart[row + 1]; i++) {
+                        sum += weights[i] * input[in + columns[i]];
+                    }
+                    sums[sample * size + row] = sum;
+                }
+            }
+            for (sample = 0; sample < samples; sample++) {
+                outputs[sample * size + row] = sums[sample * size + row] * scales[row] + biases[row];
+            }
+        }
+        activationFunction.apply(outputs, outputs, 0, samples * size, null, null);
+    }
+}
@@ -0,0 +1,175 @@
+package network;
+
+import java.util.stream.IntStream;
+
+// A trained and pruned net with int8 weights for inference, see QuantizedBlock. The input ranges of the layers
+// are calibrated by running the double precision net on samples of the training data.
+public class QuantizedModel {
+
+    private final QuantizedBlock[] blocks;
+    private final ThreadLocal<Buffers> buffers;
+
+    // Per-thread buffers for up to ArrayEngine.INFERENCE_ROWS samples
+    private static class Buffers {
+
+        // outputs[0] is the input layer, outputs[i + 1] belongs to block i
+        final double[][] outputs;
+        final byte[] quantizedInput;
+        final int[] sums;
+
+        Buffers(QuantizedBlock[] blocks) {
+            int rows = ArrayEngine.INFERENCE_ROWS;
+            outputs = new double[blocks.length + 1][];
+            outputs[0] = new double[rows * blocks[0].inputSize];
+            int inputSize = 0;
+            int size = 0;
+            for (int i = 0; i < blocks.length; i++) {
+                outputs[i + 1] = new double[rows * blocks[i].size];
+                inputSize = Math.max(inputSize, blocks[i].inputSize);
+                size = Math.max(size, blocks[i].size);
+            }
+            quantizedInput = new byte[rows * inputSize];
+            sums = new int[rows * size];
+        }
+    }
+
+    private QuantizedModel(LayerBlock[] layerBlocks, Dataset calibrationData, int calibrationSamples) {
+        double[] inputRanges = calibrate(layerBlocks, calibrationData, calibrationSamples);
+        blocks = new QuantizedBlock[layerBlocks.length];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = new QuantizedBlock(layerBlocks[i], inputRanges[i]);
+        }
+        buffers = ThreadLocal.withInitial(() -> new Buffers(blocks));
+    }
+
+    public static QuantizedModel quantize(Net net, Dataset calibrationData, int calibrationSamples) throws ParameterException {
+        checkCalibrationSamples(calibrationData, calibrationSamples);
+        return new QuantizedModel(net.compileBlocks(), calibrationData, calibrationSamples);
+    }
+
+    public static QuantizedModel quantize(Model model, Dataset calibrationData, int calibrationSamples)
+            throws ParameterException {
+        checkCalibrationSamples(calibrationData, calibrationSamples);
+        return new QuantizedModel(model.getBlocks(), calibrationData, calibrationSamples);
+    }
+
+    private static void checkCalibrationSamples(Dataset calibrationData, int calibrationSamples) throws ParameterException {
+        if (calibrationSamples < 1 || calibrationData.size() < 1) {
+            throw new ParameterException("At least one calibration sample is needed.");
+        }
+    }
+
+    // Largest magnitude of the inputs of every block over the first samples of the calibration data
+    private static double[] calibrate(LayerBlock[] layerBlocks, Dataset data, int calibrationSamples) {
+        ArrayEngine engine = new ArrayEngine(layerBlocks);
+        Workspace ws = engine.getInferenceWorkspace();
+        double[] ranges = new double[layerBlocks.length];
+        int end = Math.min(calibrationSamples, data.size());
+        for (int from = 0; from < end; from += ArrayEngine.INFERENCE_ROWS) {
+            int samples = Math.min(ArrayEngine.INFERENCE_ROWS, end - from);
+            engine.infer(ws, data, from, samples);
+            for (int i = 0; i < layerBlocks.length; i++) {
+                for (int j = 0; j < samples * layerBlocks[i].inputSize; j++) {
+                    ranges[i] = Math.max(ranges[i], Math.abs(ws.outputs[i][j]));
+                }
+            }
+        }
+        return ranges;
+    }
+
+    public double[] predict(double[] input) {
+        double[] output = new double[blocks[blocks.length - 1].size];
+        predict(input, output);
+        return output;
+    }
+
+    // Thread-safe like Net.predict(double[], double[])
+    public void predict(double[] input, double[] output) {
+        Buffers buffer = buffers.get();
+        System.arraycopy(input, 0, buffer.outputs[0], 0, blocks[0].inputSize);
+        double[] result = infer(buffer, 1);
+        System.arraycopy(result, 0, output, 0, output.length);
+    }
+
+    // Predicts all inputs in parallel, see Net.predictBatch
+    public double[][] predictBatch(double[][] inputs) {
+        int outputSize = blocks[blocks.length - 1].size;
+        double[][] outputs = new double[inputs.length][outputSize];
+        IntStream.range(0, Engine.getNumberOfChunks(inputs.length)).parallel().forEach(chunk -> {
+            int from = chunk * ArrayEngine.INFERENCE_ROWS;
+            int samples = Math.min(ArrayEngine.INFERENCE_ROWS, inputs.length - from);
+            Buffers buffer = buffers.get();
+            for (int sample = 0; sample < samples; sample++) {
+                System.arraycopy(inputs[from + sample], 0, buffer.outputs[0], sample * blocks[0].inputSize,
+                        blocks[0].inputSize);
+            }
+            double[] result = infer(buffer, samples);
+            for (int sample = 0; sample < samples; sample++) {
+                System.arraycopy(result, sample * outputSize, outputs[from + sample], 0, outputSize);
+            }
+        });
+        return outputs;
+    }
+
+    // Mean absolute output error like Net.measureErrorOnTestData
+    public double measureErrorOnTestData(Dataset testData) {
+        // One partial sum per chunk, added up in order so the result does not depend on the scheduling
+        double[] errors = new double[Engine.getNumberOfChunks(testData.size())];
+        IntStream.range(0, errors.length).parallel().forEach(chunk -> {
+            int from = chunk * ArrayEngine.INFERENCE_ROWS;
+            int samples = Math.min(ArrayEngine.INFERENCE_ROWS, testData.size() - from);
+            errors[chunk] = measureError(testData, from, samples);
+        });
+        double error = 0;
+        for (double chunkError : errors) {
+            error += chunkError;
+        }
+        return error / testData.size();
+    }
+
+    private double measureError(Dataset data, int from, int samples) {
+        Buffers buffer = buffers.get();
+        int inputSize = blocks[0].inputSize;
+        int outputSize = blocks[blocks.length - 1].size;
+        for (int sample = 0; sample < samples; sample++) {
+            data.getInput(from + sample, buffer.outputs[0], sample * inputSize);
+        }
+        double[] predicted = infer(buffer, samples);
+        double[] target = new double[outputSize];
+        double error = 0;
+        for (int sample = 0; sample < samples; sample++) {
+            data.getTarget(from + sample, target, 0);
+            double sampleError = 0;
+            for (int i = 0; i < outputSize; i++) {
+                sampleError += Math.abs(predicted[sample * outputSize + i] - target[i]);
+            }
+            error += sampleError / outputSize;
+        }
+        return error;
+    }
+
+    private double[] infer(Buffers buffer, int samples) {
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i].quantize(samples, buffer.outputs[i], buffer.quantizedInput);
+            blocks[i].forward(samples, buffer.quantizedInput, buffer.sums, buffer.outputs[i + 1]);
+        }
+        return buffer.outputs[blocks.length];
+    }
+
+    public int[] getDimension() {
+        int[] dimension = new int[blocks.length + 1];
+        dimension[0] = blocks[0].inputSize;
+        for (int i = 0; i < blocks.length; i++) {
+            dimension[i + 1] = blocks[i].size;
+        }
+        return dimension;
+    }
+
+    public int getNumberOfConnections() {
+        int connections = 0;
+        for (QuantizedBlock block : blocks) {
+            connections += block.getNumberOfConnections();
+        }
+        return connections;
+    }
+}
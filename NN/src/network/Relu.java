@@ -1,10 +1,15 @@
 package network;
 
-public class Relu extends Activation {
+public final class Relu extends Activation {
+
+    static final double ALPHA = 0.01;
+
+    // Outputs up to this value count as inactive transfers for the activation based pruning
+    static final double INACTIVE_OUTPUT = 0.01;
 
     private final String name = "Relu";
 
-    private final double alpha = 0.01;
+    private final double alpha = ALPHA;
 
     @Override
     public double phi(double x) {
@@ -24,6 +29,26 @@ public class Relu extends Activation {
         }
     }
 
+    @Override
+    public void apply(double[] x, double[] y, int from, int to, double[] inactiveTransfers, double[] activationSums) {
+        Kernels.get().relu(alpha, x, y, from, to, inactiveTransfers);
+    }
+
+    @Override
+    public void derivative(double[] x, double[] outputs, double[] factors, double[] y, int from, int to) {
+        Kernels.get().reluDerivative(alpha, x, factors, y, from, to);
+    }
+
+    @Override
+    public void apply(float[] x, float[] y, int from, int to, double[] inactiveTransfers, double[] activationSums) {
+        Kernels.get().relu((float) alpha, x, y, from, to, inactiveTransfers);
+    }
+
+    @Override
+    public void derivative(float[] x, float[] outputs, float[] factors, float[] y, int from, int to) {
+        Kernels.get().reluDerivative((float) alpha, x, factors, y, from, to);
+    }
+
     @Override
     public String toString() {
         return this.name;
@@ -0,0 +1,226 @@
+package network;
+
+// Plain loops with the same order of operations as the object graph, so results match it bit for bit
+class ScalarKernels extends Kernels {
+
+    @Override
+    public int getVectorBits() {
+        return 0;
+    }
+
+    @Override
+    public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void dot4(double[] weights, int weightOffset, double[] input, int inputOffset, int stride, int length,
+            double[] output, int outputOffset, int outputStride) {
+        int in0 = inputOffset;
+        int in1 = in0 + stride;
+        int in2 = in1 + stride;
+        int in3 = in2 + stride;
+        double net0 = 0;
+        double net1 = 0;
+        double net2 = 0;
+        double net3 = 0;
+        for (int i = 0; i < length; i++) {
+            double weight = weights[weightOffset + i];
+            net0 += weight * input[in0 + i];
+            net1 += weight * input[in1 + i];
+            net2 += weight * input[in2 + i];
+            net3 += weight * input[in3 + i];
+        }
+        output[outputOffset] = net0;
+        output[outputOffset + outputStride] = net1;
+        output[outputOffset + 2 * outputStride] = net2;
+        output[outputOffset + 3 * outputStride] = net3;
+    }
+
+    @Override
+    public void dot4(float[] weights, int weightOffset, float[] input, int inputOffset, int stride, int length,
+            float[] output, int outputOffset, int outputStride) {
+        int in0 = inputOffset;
+        int in1 = in0 + stride;
+        int in2 = in1 + stride;
+        int in3 = in2 + stride;
+        float net0 = 0;
+        float net1 = 0;
+        float net2 = 0;
+        float net3 = 0;
+        for (int i = 0; i < length; i++) {
+            float weight = weights[weightOffset + i];
+            net0 += weight * input[in0 + i];
+            net1 += weight * input[in1 + i];
+            net2 += weight * input[in2 + i];
+            net3 += weight * input[in3 + i];
+        }
+        output[outputOffset] = net0;
+        output[outputOffset + outputStride] = net1;
+        output[outputOffset + 2 * outputStride] = net2;
+        output[outputOffset + 3 * outputStride] = net3;
+    }
+
+    @Override
+    public int dot(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        int sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void dot4(byte[] weights, int weightOffset, byte[] input, int inputOffset, int stride, int length,
+            int[] output, int outputOffset, int outputStride) {
+        int in0 = inputOffset;
+        int in1 = in0 + stride;
+        int in2 = in1 + stride;
+        int in3 = in2 + stride;
+        int net0 = 0;
+        int net1 = 0;
+        int net2 = 0;
+        int net3 = 0;
+        for (int i = 0; i < length; i++) {
+            int weight = weights[weightOffset + i];
+            net0 += weight * input[in0 + i];
+            net1 += weight * input[in1 + i];
+            net2 += weight * input[in2 + i];
+            net3 += weight * input[in3 + i];
+        }
+        output[outputOffset] = net0;
+        output[outputOffset + outputStride] = net1;
+        output[outputOffset + 2 * outputStride] = net2;
+        output[outputOffset + 3 * outputStride] = net3;
+    }
+
+    @Override
+    public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            y[yOffset + i] += x[xOffset + i] * alpha;
+        }
+    }
+
+    @Override
+    public void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            y[yOffset + i] += x[xOffset + i] * alpha;
+        }
+    }
+
+    @Override
+    public void updateWeights(double step, double[] x, int xOffset, double[] weights, double[] previousWeights,
+            double[] sumOfDeltas, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            double weight = weights[offset + i] - step * x[xOffset + i];
+            sumOfDeltas[offset + i] += Math.abs(previousWeights[offset + i] - weight);
+            previousWeights[offset + i] = weights[offset + i];
+            weights[offset + i] = weight;
+        }
+    }
+
+    @Override
+    public void updateWeights(float step, float[] x, int xOffset, float[] weights, float[] previousWeights,
+            double[] sumOfDeltas, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            float weight = weights[offset + i] - step * x[xOffset + i];
+            sumOfDeltas[offset + i] += Math.abs(previousWeights[offset + i] - weight);
+            previousWeights[offset + i] = weights[offset + i];
+            weights[offset + i] = weight;
+        }
+    }
+
+    @Override
+    public void relu(double alpha, double[] x, double[] y, int from, int to, double[] inactiveTransfers) {
+        if (inactiveTransfers == null) {
+            for (int i = from; i < to; i++) {
+                y[i] = x[i] > 0 ? x[i] : alpha * x[i];
+            }
+            return;
+        }
+        for (int i = from; i < to; i++) {
+            double output = x[i] > 0 ? x[i] : alpha * x[i];
+            y[i] = output;
+            if (output <= Relu.INACTIVE_OUTPUT) {
+                inactiveTransfers[i - from]++;
+            }
+        }
+    }
+
+    @Override
+    public void relu(float alpha, float[] x, float[] y, int from, int to, double[] inactiveTransfers) {
+        for (int i = from; i < to; i++) {
+            float output = x[i] > 0 ? x[i] : alpha * x[i];
+            y[i] = output;
+            if (inactiveTransfers != null && output <= Relu.INACTIVE_OUTPUT) {
+                inactiveTransfers[i - from]++;
+            }
+        }
+    }
+
+    @Override
+    public void reluDerivative(double alpha, double[] x, double[] factors, double[] y, int from, int to) {
+        for (int i = from; i < to; i++) {
+            y[i] = factors[i] * (x[i] > 0 ? 1 : alpha);
+        }
+    }
+
+    @Override
+    public void reluDerivative(float alpha, float[] x, float[] factors, float[] y, int from, int to) {
+        for (int i = from; i < to; i++) {
+            y[i] = factors[i] * (x[i] > 0 ? 1 : alpha);
+        }
+    }
+
+    @Override
+    public void sigmoid(double[] x, double[] y, int from, int to, double[] activationSums) {
+        for (int i = from; i < to; i++) {
+            y[i] = 1.0 / (1 + Math.exp(-x[i]));
+        }
+        if (activationSums != null) {
+            for (int i = from; i < to; i++) {
+                activationSums[i - from]++;
+            }
+        }
+    }
+
+    // Evaluated in double like Sigmoid.phi and rounded
+    @Override
+    public void sigmoid(float[] x, float[] y, int from, int to, double[] activationSums) {
+        for (int i = from; i < to; i++) {
+            y[i] = (float) (1.0 / (1 + Math.exp(-x[i])));
+        }
+        if (activationSums != null) {
+            for (int i = from; i < to; i++) {
+                activationSums[i - from]++;
+            }
+        }
+    }
+
+    @Override
+    public void sigmoidDerivative(double[] outputs, double[] factors, double[] y, int from, int to) {
+        for (int i = from; i < to; i++) {
+            y[i] = factors[i] * (outputs[i] * (1 - outputs[i]));
+        }
+    }
+
+    @Override
+    public void sigmoidDerivative(float[] outputs, float[] factors, float[] y, int from, int to) {
+        for (int i = from; i < to; i++) {
+            y[i] = factors[i] * (outputs[i] * (1 - outputs[i]));
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package network;
+
+// Plain stochastic gradient descent, the engines run it on their kernels
+public final class Sgd extends Optimizer {
+
+    @Override
+    public int getStateSize() {
+        return 0;
+    }
+
+    @Override
+    public void steps(double[] gradients, double[][] state, int from, int to, double rate) {
+        for (int i = from; i < to; i++) {
+            gradients[i] *= rate;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SGD";
+    }
+}
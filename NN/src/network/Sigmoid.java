@@ -1,6 +1,6 @@
 package network;
 
-public class Sigmoid extends Activation {
+public final class Sigmoid extends Activation {
 
     private final String name = "Sigmoid";
 
@@ -15,6 +15,31 @@ public class Sigmoid extends Activation {
         return x * (1 - x);
     }
 
+    @Override
+    public double derivative(double x, double output) {
+        return output * (1 - output);
+    }
+
+    @Override
+    public void apply(double[] x, double[] y, int from, int to, double[] inactiveTransfers, double[] activationSums) {
+        Kernels.get().sigmoid(x, y, from, to, activationSums);
+    }
+
+    @Override
+    public void derivative(double[] x, double[] outputs, double[] factors, double[] y, int from, int to) {
+        Kernels.get().sigmoidDerivative(outputs, factors, y, from, to);
+    }
+
+    @Override
+    public void apply(float[] x, float[] y, int from, int to, double[] inactiveTransfers, double[] activationSums) {
+        Kernels.get().sigmoid(x, y, from, to, activationSums);
+    }
+
+    @Override
+    public void derivative(float[] x, float[] outputs, float[] factors, float[] y, int from, int to) {
+        Kernels.get().sigmoidDerivative(outputs, factors, y, from, to);
+    }
+
     @Override
     public String toString() {
         return this.name;
@@ -0,0 +1,72 @@
+package network;
+
+// Partial selection on primitive scores: finds the positions of the k largest scores with a bounded heap
+// instead of sorting all of them. Equal scores are ranked by position, the way a stable sort in
+// descending order ranks them, and NaN ranks above everything else like in Double.compare.
+final class TopK {
+
+    private TopK() {
+    }
+
+    // Writes the positions of the k largest of the first length scores to selected, largest first.
+    // Takes O(length log k) steps.
+    static void selectLargest(double[] scores, int length, int k, int[] selected) {
+        // selected[0] to selected[size - 1] is a heap with the lowest ranked selected position at the root
+        int size = 0;
+        for (int i = 0; i < length; i++) {
+            if (size < k) {
+                selected[size] = i;
+                siftUp(scores, selected, size++);
+            } else if (k > 0 && ranksBefore(scores, i, selected[0])) {
+                selected[0] = i;
+                siftDown(scores, selected, 0, size);
+            }
+        }
+        // Moving the lowest ranked position to the end each time leaves them ordered from the largest score
+        for (int end = size - 1; end > 0; end--) {
+            swap(selected, 0, end);
+            siftDown(scores, selected, 0, end);
+        }
+    }
+
+    private static boolean ranksBefore(double[] scores, int a, int b) {
+        int comparison = Double.compare(scores[a], scores[b]);
+        return comparison > 0 || comparison == 0 && a < b;
+    }
+
+    private static void siftUp(double[] scores, int[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!ranksBefore(scores, heap[parent], heap[i])) {
+                return;
+            }
+            swap(heap, parent, i);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(double[] scores, int[] heap, int i, int size) {
+        while (true) {
+            int lowest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && ranksBefore(scores, heap[lowest], heap[left])) {
+                lowest = left;
+            }
+            if (right < size && ranksBefore(scores, heap[lowest], heap[right])) {
+                lowest = right;
+            }
+            if (lowest == i) {
+                return;
+            }
+            swap(heap, i, lowest);
+            i = lowest;
+        }
+    }
+
+    private static void swap(int[] array, int a, int b) {
+        int temp = array[a];
+        array[a] = array[b];
+        array[b] = temp;
+    }
+}
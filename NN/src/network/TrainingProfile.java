@@ -0,0 +1,117 @@
+package network;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+// Time spent in the phases of training and the latencies of predictions, collected while Net.useProfiling is set.
+// The phases are summed with System.nanoTime around every sample or batch. Parallel training only times shuffling,
+// pruning and writing back, its workers are not split into phases.
+// The latencies are those of single samples: Net.predict records every call and measureErrorOnTestData predicts
+// sample by sample while profiling. Net.predictBatch is not recorded, its rows have no latency of their own.
+public class TrainingProfile {
+
+    public enum Phase {
+        // Includes loading the sample into the engine
+        FORWARD("Forward"),
+        OUTPUT_ERROR("Output error"),
+        BACKPROPAGATION("Backpropagation"),
+        WEIGHT_UPDATE("Weight update"),
+        SHUFFLE("Shuffle"),
+        // Copying the arrays of an engine back into the graph before pruning
+        WRITE_BACK("Write back"),
+        PRUNING("Pruning");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final double[] PERCENTILES = {50, 99, 99.9};
+
+    // Only written by the training thread
+    private final long[] nanos = new long[PHASES.length];
+    // Guarded by this, predictions may run on several threads
+    private final LatencyHistogram predictLatencies = new LatencyHistogram();
+
+    // Adds the time since start to phase and returns the current time, the start of the next phase
+    long lap(Phase phase, long start) {
+        long now = System.nanoTime();
+        nanos[phase.ordinal()] += now - start;
+        return now;
+    }
+
+    synchronized void recordPrediction(long nanos) {
+        predictLatencies.record(nanos);
+    }
+
+    // Latencies recorded elsewhere, so parallel predictions lock the profile once instead of once per sample
+    synchronized void addPredictions(LatencyHistogram latencies) {
+        predictLatencies.add(latencies);
+    }
+
+    public long getNanos(Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    public synchronized LatencyHistogram getPredictLatencies() {
+        return predictLatencies.copy();
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(nanos, 0);
+        predictLatencies.reset();
+    }
+
+    // Column names and values for CSV files, the phases in nanoseconds followed by the predict percentiles
+    public static String getCsvHeader() {
+        StringBuilder header = new StringBuilder();
+        for (Phase phase : PHASES) {
+            header.append(header.length() > 0 ? "," : "").append(phase).append(" (ns)");
+        }
+        for (double percentile : PERCENTILES) {
+            header.append(",Predict p").append(format(percentile)).append(" (ns)");
+        }
+        return header.toString();
+    }
+
+    public static int getCsvColumns() {
+        return PHASES.length + PERCENTILES.length;
+    }
+
+    public synchronized String toCsv() {
+        StringBuilder row = new StringBuilder();
+        for (Phase phase : PHASES) {
+            row.append(row.length() > 0 ? "," : "").append(nanos[phase.ordinal()]);
+        }
+        for (double percentile : PERCENTILES) {
+            row.append(',').append(predictLatencies.getPercentile(percentile));
+        }
+        return row.toString();
+    }
+
+    private static String format(double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((int) percentile) : String.valueOf(percentile);
+    }
+
+    @Override
+    public synchronized String toString() {
+        long total = 0;
+        for (long phaseNanos : nanos) {
+            total += phaseNanos;
+        }
+        StringBuilder text = new StringBuilder();
+        for (Phase phase : PHASES) {
+            text.append(String.format(Locale.ROOT, "%s %.1f ms (%.1f%%), ", phase, nanos[phase.ordinal()] / 1e6,
+                    total == 0 ? 0.0 : 100.0 * nanos[phase.ordinal()] / total));
+        }
+        return text.append("predict latency ").append(predictLatencies).toString();
+    }
+}
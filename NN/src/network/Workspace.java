@@ -0,0 +1,66 @@
+package network;
+
+// Buffers of the array engine for a number of samples, kept apart from the parameters in LayerBlock.
+// Values of several samples are stored row after row: neuron n of sample s is found at s * size + n.
+class Workspace {
+
+    final int rows;
+
+    // outputs[0] is the input layer, outputs[i + 1] belongs to block i
+    final double[][] outputs;
+    final double[] targets;
+    final double[][] activations;
+    final double[][] errors;
+    final double[][] deltas;
+    final double[] sampleErrors;
+
+    // Gradients summed over a batch, same layout as the weights and biases of the blocks
+    final double[][] weightGradients;
+    final double[][] biasGradients;
+
+    // Activation statistics counted during a batch, added to the blocks afterwards
+    final double[][] inactiveTransfers;
+    final double[][] activationSums;
+
+    Workspace(LayerBlock[] blocks) {
+        this(blocks, 1);
+    }
+
+    Workspace(LayerBlock[] blocks, int rows) {
+        this(blocks, rows, true);
+    }
+
+    // Inference only needs the outputs of every layer
+    Workspace(LayerBlock[] blocks, int rows, boolean training) {
+        this.rows = rows;
+        outputs = new double[blocks.length + 1][];
+        activations = new double[blocks.length][];
+        errors = new double[blocks.length][];
+        deltas = new double[blocks.length][];
+        sampleErrors = new double[rows];
+        weightGradients = new double[blocks.length][];
+        biasGradients = new double[blocks.length][];
+        inactiveTransfers = new double[blocks.length][];
+        activationSums = new double[blocks.length][];
+
+        outputs[0] = new double[rows * blocks[0].inputSize];
+        targets = new double[rows * blocks[blocks.length - 1].size];
+        for (int i = 0; i < blocks.length; i++) {
+            outputs[i + 1] = new double[rows * blocks[i].size];
+            if (!training) {
+                continue;
+            }
+            activations[i] = new double[rows * blocks[i].size];
+            errors[i] = new double[rows * blocks[i].size];
+            deltas[i] = new double[rows * blocks[i].size];
+            weightGradients[i] = new double[blocks[i].weights.length];
+            biasGradients[i] = new double[blocks[i].size];
+            inactiveTransfers[i] = new double[blocks[i].size];
+            activationSums[i] = new double[blocks[i].size];
+        }
+    }
+
+    double[] getOutput() {
+        return outputs[outputs.length - 1];
+    }
+}
@@ -0,0 +1,52 @@
+package server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+// One connection to an InferenceServer, see there for the protocol. Not thread-safe, use one client per thread.
+public class InferenceClient implements AutoCloseable {
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    public InferenceClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    public double[] predict(double[] input) throws IOException {
+        out.writeInt(input.length);
+        for (double value : input) {
+            out.writeDouble(value);
+        }
+        out.flush();
+        int size = in.readInt();
+        if (size == InferenceServer.ERROR) {
+            throw new IOException(in.readUTF());
+        }
+        double[] output = new double[size];
+        for (int i = 0; i < size; i++) {
+            output[i] = in.readDouble();
+        }
+        return output;
+    }
+
+    // Statistics of the server since the last call by any client
+    public String takeStatistics() throws IOException {
+        out.writeInt(0);
+        out.flush();
+        return in.readUTF();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
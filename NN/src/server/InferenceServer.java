@@ -0,0 +1,141 @@
+package server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import network.Model;
+
+// Standalone inference server for a model file written by Net.save. It listens on the loopback interface and
+// serves every connection on its own virtual thread, the predictions of all connections go through one MicroBatcher.
+// Protocol, in the big-endian format of DataOutputStream: a request is the number of inputs followed by the inputs
+// as doubles, the response the number of outputs followed by the outputs, or -1 and an error message as UTF string.
+// A request without inputs asks for the statistics since the last such request, answered as UTF string.
+// Arguments: <model file> [port] [maximum batch size] [maximum wait in microseconds]
+public class InferenceServer implements AutoCloseable {
+
+    static final int ERROR = -1;
+
+    private final int inputSize;
+    private final MicroBatcher batcher;
+    private final ServerSocket serverSocket;
+    private final Thread acceptThread;
+    // Open connections, closed with the server
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+
+    // Port 0 picks a free port, see getPort
+    public InferenceServer(Model model, int port, int maxBatchSize, long maxWaitMicros) throws IOException {
+        this.inputSize = model.getDimension()[0];
+        this.batcher = new MicroBatcher(model, maxBatchSize, maxWaitMicros * 1000);
+        this.serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        this.acceptThread = Thread.ofPlatform().name("inference-server").start(this::accept);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Arguments: <model file> [port] [maximum batch size] [maximum wait in microseconds]");
+            return;
+        }
+        Model model = Model.load(Paths.get(args[0]));
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 5555;
+        int maxBatchSize = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        long maxWaitMicros = args.length > 3 ? Long.parseLong(args[3]) : 200;
+        InferenceServer server = new InferenceServer(model, port, maxBatchSize, maxWaitMicros);
+        System.out.println("Serving " + args[0] + " with " + model.getNumberOfConnections() + " connections on port "
+                + server.getPort() + ", batches of up to " + maxBatchSize + " requests within " + maxWaitMicros + " us");
+        server.acceptThread.join();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                sockets.add(socket);
+                if (serverSocket.isClosed()) {
+                    // Accepted while the server closed, after close() closed the connections
+                    sockets.remove(socket);
+                    socket.close();
+                    return;
+                }
+                Thread.ofVirtual().name("connection " + socket.getPort()).start(() -> serve(socket));
+            } catch (IOException ex) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("Cannot accept connection: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            socket.setTcpNoDelay(true);
+            while (true) {
+                int size = in.readInt();
+                if (size == 0) {
+                    out.writeUTF(batcher.takeStatistics());
+                } else if (size != inputSize) {
+                    // The inputs are skipped, so the connection stays usable
+                    in.skipNBytes(Math.max(0, size) * (long) Double.BYTES);
+                    out.writeInt(ERROR);
+                    out.writeUTF("The model takes " + inputSize + " inputs, not " + size);
+                } else {
+                    double[] input = new double[size];
+                    for (int i = 0; i < size; i++) {
+                        input[i] = in.readDouble();
+                    }
+                    respond(out, input);
+                }
+                out.flush();
+            }
+        } catch (EOFException ex) {
+            // Client closed the connection
+        } catch (IOException ex) {
+            if (!serverSocket.isClosed()) {
+                System.err.println("Connection failed: " + ex.getMessage());
+            }
+        } finally {
+            sockets.remove(socket);
+        }
+    }
+
+    private void respond(DataOutputStream out, double[] input) throws IOException {
+        try {
+            double[] output = batcher.predict(input);
+            out.writeInt(output.length);
+            for (double value : output) {
+                out.writeDouble(value);
+            }
+        } catch (ExecutionException ex) {
+            out.writeInt(ERROR);
+            out.writeUTF("Prediction failed: " + ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Server closed");
+        }
+    }
+
+    @Override
+    // Clients that are still connected get an IOException on their next request
+    public void close() throws IOException {
+        serverSocket.close();
+        batcher.close();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+}
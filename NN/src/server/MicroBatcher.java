@@ -0,0 +1,141 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import network.LatencyHistogram;
+import network.Model;
+
+// Combines the predictions of concurrent callers into batches for Model.predictBatch, run by one platform thread.
+// A batch is closed when it holds maxBatchSize requests or maxWait after its first request arrived. The wait adapts
+// to the load: the batcher only waits for more requests while batches find other requests already queued, so a
+// single client does not pay the wait.
+class MicroBatcher implements AutoCloseable {
+
+    private static class Request {
+
+        final double[] input;
+        final long startTime = System.nanoTime();
+        final CompletableFuture<double[]> output = new CompletableFuture<>();
+
+        Request(double[] input) {
+            this.input = input;
+        }
+    }
+
+    private final Model model;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean closed;
+
+    // Statistics since the last call of takeStatistics, guarded by this
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private long batches;
+    private long statisticsStart = System.nanoTime();
+
+    MicroBatcher(Model model, int maxBatchSize, long maxWaitNanos) {
+        this.model = model;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = maxWaitNanos;
+        this.thread = Thread.ofPlatform().name("micro-batcher").daemon().start(this::run);
+    }
+
+    // Blocks the calling thread, meant to be a virtual thread, until the batch with its input has been predicted
+    double[] predict(double[] input) throws InterruptedException, ExecutionException {
+        Request request = new Request(input);
+        queue.add(request);
+        // Closed before or while the request was queued, the batcher takes no more requests
+        if (closed) {
+            failQueued(new IllegalStateException("Batcher closed"));
+        }
+        return request.output.get();
+    }
+
+    private void run() {
+        ArrayList<Request> batch = new ArrayList<>(maxBatchSize);
+        int lastBatchSize = 1;
+        try {
+            while (true) {
+                Request first = queue.take();
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                boolean wait = batch.size() > 1 || lastBatchSize > 1;
+                long deadline = first.startTime + maxWaitNanos;
+                while (wait && batch.size() < maxBatchSize) {
+                    Request next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                }
+                execute(batch);
+                lastBatchSize = batch.size();
+                batch.clear();
+            }
+        } catch (InterruptedException ex) {
+            // Closed, callers still waiting get an exception
+            for (Request request : batch) {
+                request.output.completeExceptionally(ex);
+            }
+            failQueued(ex);
+        }
+    }
+
+    private void failQueued(Exception ex) {
+        Request request;
+        while ((request = queue.poll()) != null) {
+            request.output.completeExceptionally(ex);
+        }
+    }
+
+    private void execute(ArrayList<Request> batch) {
+        double[][] inputs = new double[batch.size()][];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = batch.get(i).input;
+        }
+        double[][] outputs;
+        try {
+            outputs = model.predictBatch(inputs);
+        } catch (RuntimeException ex) {
+            for (Request request : batch) {
+                request.output.completeExceptionally(ex);
+            }
+            return;
+        }
+        long endTime = System.nanoTime();
+        synchronized (this) {
+            for (Request request : batch) {
+                latencies.record(endTime - request.startTime);
+            }
+            batches++;
+        }
+        for (int i = 0; i < outputs.length; i++) {
+            batch.get(i).output.complete(outputs[i]);
+        }
+    }
+
+    // Throughput, batch sizes and latencies from queueing to the finished prediction, then starts counting anew
+    synchronized String takeStatistics() {
+        double seconds = (System.nanoTime() - statisticsStart) / 1e9;
+        String statistics = String.format(Locale.ROOT, "%d requests, %.0f requests/s, %d batches of %.1f on average, latency %s",
+                latencies.getCount(), latencies.getCount() / seconds, batches,
+                batches == 0 ? 0.0 : (double) latencies.getCount() / batches, latencies);
+        latencies.reset();
+        batches = 0;
+        statisticsStart = System.nanoTime();
+        return statistics;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        thread.interrupt();
+    }
+}
@@ -0,0 +1,75 @@
+package server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+// The connection of one worker to a ParameterServer, see there for the protocol. Not thread-safe.
+public class ParameterClient implements AutoCloseable {
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private ByteBuffer buffer;
+    private int workers;
+
+    public ParameterClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    // Waits until all workers are registered and returns the number of this worker, counted from 0.
+    // The server starts from the initial parameters of the first worker.
+    public int register(double[] initialParameters) throws IOException {
+        buffer = ByteBuffer.allocate(initialParameters.length * Double.BYTES);
+        out.writeInt(ParameterServer.HELLO);
+        ParameterServer.writeVector(out, initialParameters, buffer);
+        out.flush();
+        int worker = readStatus();
+        workers = in.readInt();
+        return worker;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    // Waits until the staleness bound allows the next round, copies the parameters into the given array
+    // and returns the number of pushes of all workers so far
+    public long pull(double[] parameters) throws IOException {
+        out.writeInt(ParameterServer.PULL);
+        out.flush();
+        long pushes = in.readLong();
+        if (ParameterServer.readVector(in, parameters, buffer) == null) {
+            throw new IOException("The server has another number of parameters than " + parameters.length);
+        }
+        return pushes;
+    }
+
+    // The trained parameters minus the pulled ones
+    public void push(double[] difference) throws IOException {
+        out.writeInt(ParameterServer.PUSH);
+        ParameterServer.writeVector(out, difference, buffer);
+        out.flush();
+        readStatus();
+    }
+
+    private int readStatus() throws IOException {
+        int status = in.readInt();
+        if (status == ParameterServer.ERROR) {
+            throw new IOException(in.readUTF());
+        }
+        return status;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
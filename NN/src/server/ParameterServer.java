@@ -0,0 +1,348 @@
+package server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Parameter server for data-parallel training in several processes, see ParameterClient and testing.DistributedWorker.
+// It holds the weights and biases of a net as one flat vector in the layout of Net.getParameters, knows nothing else
+// about the net, and listens on the loopback interface with every worker connection on its own virtual thread.
+// A worker pulls the parameters, trains a round of mini-batches on its shard of the data and pushes the difference to
+// the parameters it pulled, which is added divided by the number of workers as soon as it arrives.
+// The staleness bounds how many rounds a worker may be ahead of the slowest one: a pull waits until every worker has
+// pushed at least as many rounds as the pulling worker minus the staleness. With staleness 0 training is synchronous:
+// the differences of a round are collected and only added once every connected worker has pushed that round, so
+// every round starts from the mean of the results of all workers in the previous round. Workers that disconnected
+// no longer hold the others back.
+// Protocol, in the big-endian format of DataOutputStream: a message is its type followed by its data. A vector is its
+// length followed by the values as doubles, written as one block.
+// HELLO with the initial parameters, those of the first worker are kept: answered with the number of the worker and
+// the number of workers once all workers are registered. PULL: answered with the number of pushes so far and the
+// parameters. PUSH with the difference: answered with 0. Errors are answered with -1 and a message as UTF string.
+// Arguments: <workers> [staleness] [port]
+public class ParameterServer implements AutoCloseable {
+
+    static final int HELLO = 1;
+    static final int PULL = 2;
+    static final int PUSH = 3;
+    static final int OK = 0;
+    static final int ERROR = -1;
+
+    private final int workers;
+    private final int staleness;
+    private final ServerSocket serverSocket;
+    private final Thread acceptThread;
+
+    // Guarded by lock, changed is signalled after every registration, push and disconnect
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private double[] parameters;
+    // Differences of the current round in synchronous mode, added to the parameters once the round is complete
+    private double[] pending;
+    private int appliedRounds;
+    // Rounds pushed per worker, Integer.MAX_VALUE once the worker disconnected
+    private final int[] rounds;
+    private int registered;
+    private int finished;
+    private long pushes;
+    private long pulls;
+    private long waitNanos;
+    private long startTime;
+    private long endTime;
+
+    // Port 0 picks a free port, see getPort
+    public ParameterServer(int workers, int staleness, int port) throws IOException {
+        this.workers = workers;
+        this.staleness = staleness;
+        this.rounds = new int[workers];
+        this.serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        this.acceptThread = Thread.ofPlatform().name("parameter-server").start(this::accept);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Arguments: <workers> [staleness] [port]");
+            return;
+        }
+        int workers = Integer.parseInt(args[0]);
+        int staleness = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 5556;
+        try (ParameterServer server = new ParameterServer(workers, staleness, port)) {
+            System.out.println("Waiting for " + workers + " workers on port " + server.getPort() + ", staleness "
+                    + staleness);
+            long trainingTime = server.awaitWorkers();
+            System.out.println(String.format(Locale.ROOT, "Trained in %.0f ms: %d pushes, %.1f MB transferred,"
+                    + " %.0f ms waiting for slower workers", trainingTime / 1e6, server.getPushes(),
+                    server.getBytesTransferred() / 1e6, server.getWaitNanos() / 1e6));
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    // Waits until all workers have registered and disconnected again,
+    // returns the nanoseconds from the registration of the last worker to the disconnect of the last one
+    public long awaitWorkers() throws InterruptedException {
+        lock.lock();
+        try {
+            while (finished < workers) {
+                changed.await();
+            }
+            return endTime - startTime;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Copy of the current parameters, null before the first worker registered
+    public double[] getParameters() {
+        lock.lock();
+        try {
+            return parameters == null ? null : parameters.clone();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getPushes() {
+        lock.lock();
+        try {
+            return pushes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Summed over all pulls, the time they waited for the staleness bound
+    public long getWaitNanos() {
+        lock.lock();
+        try {
+            return waitNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Parameter vectors sent and received after the registration
+    public long getBytesTransferred() {
+        lock.lock();
+        try {
+            return parameters == null ? 0 : (pulls + pushes) * (long) parameters.length * Double.BYTES;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread.ofVirtual().name("worker " + socket.getPort()).start(() -> serve(socket));
+            } catch (IOException ex) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("Cannot accept connection: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        int worker = -1;
+        // Per connection, so the vectors are encoded and decoded outside of the lock
+        double[] vector = null;
+        ByteBuffer buffer = null;
+        try (socket;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            socket.setTcpNoDelay(true);
+            while (true) {
+                int type = in.readInt();
+                if (type == HELLO && worker < 0) {
+                    double[] initialParameters = readVector(in, null, null);
+                    buffer = ByteBuffer.allocate(initialParameters.length * Double.BYTES);
+                    vector = new double[initialParameters.length];
+                    worker = register(initialParameters);
+                    if (worker < 0) {
+                        out.writeInt(ERROR);
+                        out.writeUTF(worker == -1 ? "All " + workers + " workers are registered"
+                                : "The parameters of the first worker have another length");
+                        out.flush();
+                        return;
+                    }
+                    out.writeInt(worker);
+                    out.writeInt(workers);
+                } else if (type == PULL && worker >= 0) {
+                    out.writeLong(pull(worker, vector));
+                    writeVector(out, vector, buffer);
+                } else if (type == PUSH && worker >= 0) {
+                    if (readVector(in, vector, buffer) == null) {
+                        out.writeInt(ERROR);
+                        out.writeUTF("The difference has another length than the parameters");
+                        out.flush();
+                        return;
+                    }
+                    push(worker, vector);
+                    out.writeInt(OK);
+                } else {
+                    out.writeInt(ERROR);
+                    out.writeUTF(worker < 0 ? "Expected HELLO, not " + type : "Unknown message type " + type);
+                    out.flush();
+                    return;
+                }
+                out.flush();
+            }
+        } catch (EOFException ex) {
+            // Worker closed the connection
+        } catch (IOException ex) {
+            if (!serverSocket.isClosed()) {
+                System.err.println("Connection failed: " + ex.getMessage());
+            }
+        } catch (InterruptedException ex) {
+            // Closed
+        } finally {
+            if (worker >= 0) {
+                disconnect(worker);
+            }
+        }
+    }
+
+    // Returns the number of the worker once all are registered, -1 if all are registered already,
+    // -2 if the parameters do not match those of the first worker
+    private int register(double[] initialParameters) throws InterruptedException {
+        lock.lock();
+        try {
+            if (registered == workers) {
+                return -1;
+            }
+            if (parameters == null) {
+                parameters = initialParameters;
+                pending = staleness == 0 ? new double[parameters.length] : null;
+            } else if (parameters.length != initialParameters.length) {
+                return -2;
+            }
+            int worker = registered++;
+            if (registered == workers) {
+                startTime = System.nanoTime();
+                changed.signalAll();
+            }
+            while (registered < workers) {
+                changed.await();
+            }
+            return worker;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Copies the parameters into destination once the staleness bound allows the next round of the worker
+    private long pull(int worker, double[] destination) throws InterruptedException {
+        lock.lock();
+        try {
+            long time = System.nanoTime();
+            while (getSlowestRound() < rounds[worker] - staleness) {
+                changed.await();
+            }
+            waitNanos += System.nanoTime() - time;
+            pulls++;
+            System.arraycopy(parameters, 0, destination, 0, parameters.length);
+            return pushes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void push(int worker, double[] difference) {
+        lock.lock();
+        try {
+            double scale = 1.0 / workers;
+            double[] target = pending != null ? pending : parameters;
+            for (int i = 0; i < target.length; i++) {
+                target[i] += scale * difference[i];
+            }
+            rounds[worker]++;
+            pushes++;
+            applyCompleteRound();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void disconnect(int worker) {
+        lock.lock();
+        try {
+            rounds[worker] = Integer.MAX_VALUE;
+            finished++;
+            applyCompleteRound();
+            if (finished == workers) {
+                endTime = System.nanoTime();
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // In synchronous mode, adds the pending differences once every connected worker has pushed the round.
+    // Pulls wait for the round, so no worker can push the next one before this.
+    private void applyCompleteRound() {
+        int slowest = getSlowestRound();
+        if (pending == null || slowest <= appliedRounds) {
+            return;
+        }
+        for (int i = 0; i < parameters.length; i++) {
+            parameters[i] += pending[i];
+            pending[i] = 0;
+        }
+        appliedRounds = slowest;
+    }
+
+    private int getSlowestRound() {
+        int slowest = Integer.MAX_VALUE;
+        for (int round : rounds) {
+            slowest = Math.min(slowest, round);
+        }
+        return slowest;
+    }
+
+    // The values go through buffer as one block, which must hold them all
+    static void writeVector(DataOutputStream out, double[] values, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        buffer.asDoubleBuffer().put(values);
+        out.writeInt(values.length);
+        out.write(buffer.array(), 0, values.length * Double.BYTES);
+    }
+
+    // Reads into values through buffer, returns null if the length does not match.
+    // Without values a new array and buffer of the received length are used.
+    static double[] readVector(DataInputStream in, double[] values, ByteBuffer buffer) throws IOException {
+        int length = in.readInt();
+        if (values == null) {
+            values = new double[length];
+            buffer = ByteBuffer.allocate(length * Double.BYTES);
+        } else if (length != values.length) {
+            in.skipNBytes(Math.max(0, length) * (long) Double.BYTES);
+            return null;
+        }
+        in.readFully(buffer.array(), 0, length * Double.BYTES);
+        buffer.clear();
+        buffer.asDoubleBuffer().get(values);
+        return values;
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+}
@@ -0,0 +1,92 @@
+package testing;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import network.ArrayDataset;
+import network.Dataset;
+import network.Net;
+import network.ParameterException;
+import network.Relu;
+import network.Sigmoid;
+
+// Checks that training and prediction allocate nothing per sample once they are warmed up.
+// The allocated bytes of the current thread are counted for n and for 2n samples, the difference
+// divided by n is what one sample allocates, independent of the fixed allocations per call.
+// Exits with status 1 if anything allocates per sample. Arguments: [samples]
+public class AllocationCheck {
+
+    private static final int WARMUP = 20;
+    private static final double TOLERANCE = 1;
+
+    private static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public interface Run {
+        void samples(Dataset data) throws ParameterException;
+    }
+
+    public static void main(String[] args) throws ParameterException {
+        int samples = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int[] layerDimensions = new int[]{784, 50, 50, 10};
+        double[][] input = new double[2 * samples][layerDimensions[0]];
+        double[][] target = new double[2 * samples][layerDimensions[layerDimensions.length - 1]];
+        Random random = new Random(42);
+        for (int i = 0; i < input.length; i++) {
+            for (int j = 0; j < input[i].length; j++) {
+                input[i][j] = random.nextDouble();
+            }
+            target[i][random.nextInt(target[i].length)] = 1;
+        }
+        Dataset small = new ArrayDataset(Arrays.copyOf(input, samples), Arrays.copyOf(target, samples));
+        Dataset large = new ArrayDataset(input, target);
+
+        boolean passed = true;
+        Net graph = new Net(layerDimensions, new Relu(), new Sigmoid());
+        passed &= check("Training (graph)", small, large, data -> graph.training(data, 0.01, 1, false));
+
+        Net engine = new Net(layerDimensions, new Relu(), new Sigmoid());
+        engine.useArrayEngine = true;
+        passed &= check("Training (array engine)", small, large, data -> engine.training(data, 0.01, 1, false));
+        passed &= check("Training (array engine, batches of 64)", small, large, data -> engine.training(data, 0.01, 1, false, 64));
+        passed &= check("Prediction (array engine)", small, large, data -> predict(engine, data));
+
+        Net floatNet = new Net(layerDimensions, new Relu(), new Sigmoid());
+        floatNet.useFloatPrecision = true;
+        passed &= check("Training (float)", small, large, data -> floatNet.training(data, 0.01, 1, false));
+        passed &= check("Training (float, batches of 64)", small, large, data -> floatNet.training(data, 0.01, 1, false, 64));
+        passed &= check("Prediction (float)", small, large, data -> predict(floatNet, data));
+
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    // predict(double[]) returns a new array, the thread-safe predict fills a given one
+    private static void predict(Net network, Dataset data) {
+        double[] input = new double[data.getInputSize()];
+        double[] output = new double[data.getTargetSize()];
+        for (int sample = 0; sample < data.size(); sample++) {
+            data.getInput(sample, input, 0);
+            network.predict(input, output);
+        }
+    }
+
+    private static boolean check(String name, Dataset small, Dataset large, Run run) throws ParameterException {
+        for (int i = 0; i < WARMUP; i++) {
+            run.samples(small);
+        }
+        long smallBytes = allocatedBytes(run, small);
+        long largeBytes = allocatedBytes(run, large);
+        double bytesPerSample = (double) (largeBytes - smallBytes) / (large.size() - small.size());
+        boolean passed = bytesPerSample < TOLERANCE;
+        System.out.println(name + ": " + bytesPerSample + " bytes per sample, " + smallBytes + " bytes per call of "
+                + small.size() + " samples " + (passed ? "OK" : "FAILED"));
+        return passed;
+    }
+
+    private static long allocatedBytes(Run run, Dataset data) throws ParameterException {
+        long before = threads.getCurrentThreadAllocatedBytes();
+        run.samples(data);
+        return threads.getCurrentThreadAllocatedBytes() - before;
+    }
+}
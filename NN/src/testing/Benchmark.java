@@ -0,0 +1,59 @@
+package testing;
+
+import java.util.Locale;
+
+// Small benchmark harness in the spirit of JMH: every benchmark runs some warmup rounds first, then the
+// measured rounds are timed with System.nanoTime. The setup of a round is not timed, so benchmarks that
+// change their state (training, pruning) can start from a fresh one. The results of the operations are
+// consumed, so the JIT cannot remove the measured work.
+public class Benchmark {
+
+    public interface Setup {
+        void run() throws Exception;
+    }
+
+    // Returns any value computed from the result
+    public interface Operation {
+        double run() throws Exception;
+    }
+
+    public static final String HEADER = "Benchmark,Parameters,Time per operation (ns),Standard deviation (ns),Rounds";
+
+    private static volatile double consumed;
+
+    private final int warmupRounds;
+    private final int measuredRounds;
+
+    public Benchmark(int warmupRounds, int measuredRounds) {
+        this.warmupRounds = warmupRounds;
+        this.measuredRounds = measuredRounds;
+    }
+
+    // Runs operationsPerRound operations per round and prints one CSV row with the time per operation
+    public RunningStatistics measure(String name, String parameters, int operationsPerRound, Setup setup, Operation operation)
+            throws Exception {
+        RunningStatistics statistics = new RunningStatistics();
+        for (int round = 0; round < warmupRounds + measuredRounds; round++) {
+            setup.run();
+            double result = 0;
+            long startTime = System.nanoTime();
+            for (int i = 0; i < operationsPerRound; i++) {
+                result += operation.run();
+            }
+            long duration = System.nanoTime() - startTime;
+            consumed += result;
+            if (round >= warmupRounds) {
+                statistics.add((double) duration / operationsPerRound);
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "%s,%s,%.1f,%.1f,%d", name, parameters, statistics.getMean(),
+                Math.sqrt(statistics.getVariance()), statistics.getCount()));
+        return statistics;
+    }
+
+    public RunningStatistics measure(String name, String parameters, int operationsPerRound, Operation operation)
+            throws Exception {
+        return measure(name, parameters, operationsPerRound, () -> {
+        }, operation);
+    }
+}
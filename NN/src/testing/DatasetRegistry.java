@@ -0,0 +1,30 @@
+package testing;
+
+import java.io.IOException;
+import java.util.HashMap;
+import network.Dataset;
+
+// Loads every dataset once and hands the same read-only instance to all experiments using it.
+// Experiments shuffle through their own permutation of the sample indices, so sharing is safe.
+public class DatasetRegistry {
+
+    private static final HashMap<String, Dataset> datasets = new HashMap<>();
+
+    public static synchronized Dataset get(String name, Loader loader) throws IOException {
+        Dataset dataset = datasets.get(name);
+        if (dataset == null) {
+            dataset = loader.load();
+            datasets.put(name, dataset);
+        }
+        return dataset;
+    }
+
+    public static synchronized void clear() {
+        datasets.clear();
+    }
+
+    public interface Loader {
+
+        Dataset load() throws IOException;
+    }
+}
@@ -0,0 +1,79 @@
+package testing;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import network.Dataset;
+import network.Net;
+import network.ParameterException;
+import server.ParameterServer;
+
+// Scaling of distributed training on one machine: a ParameterServer runs in this JVM and 1 to N DistributedWorker
+// processes train the same epochs over the same data on loopback sockets, synchronously and with bounded staleness.
+// The time runs from the registration of the last worker to the end of the last one, so JVM startup and data loading
+// are not part of it. Speedup and efficiency (speedup divided by workers) are relative to one worker of the same mode.
+// Prints one CSV row per mode and number of workers, the test error is that of the final parameters of the server.
+// Arguments: [maximum workers] [staleness of the asynchronous mode] [epochs] [batches per round] [batch size]
+// [learning rate]
+public class DistributedTrainingBenchmark {
+
+    private static final String HEADER = "Mode,Workers,Staleness,Time (ms),Samples/s,Speedup,Efficiency,Test error,"
+            + "Pushes,Wait (ms),Transferred (MB)";
+
+    public static void main(String[] args) throws IOException, InterruptedException, ParameterException {
+        int maxWorkers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int staleness = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        String epochs = args.length > 2 ? args[2] : "2";
+        String batchesPerRound = args.length > 3 ? args[3] : "10";
+        String batchSize = args.length > 4 ? args[4] : "32";
+        String learningRate = args.length > 5 ? args[5] : "0.2";
+
+        Dataset test = DistributedWorker.loadData()[1];
+        System.out.println(HEADER);
+        for (int mode = 0; mode < 2; mode++) {
+            int modeStaleness = mode == 0 ? 0 : staleness;
+            double singleWorkerTime = 0;
+            for (int workers = 1; workers <= maxWorkers; workers++) {
+                try (ParameterServer server = new ParameterServer(workers, modeStaleness, 0)) {
+                    ArrayList<Process> processes = new ArrayList<>();
+                    for (int i = 0; i < workers; i++) {
+                        processes.add(startWorker("localhost:" + server.getPort(), epochs, batchesPerRound, batchSize,
+                                learningRate));
+                    }
+                    for (Process process : processes) {
+                        if (process.waitFor() != 0) {
+                            throw new IllegalStateException("Worker failed with exit code " + process.exitValue());
+                        }
+                    }
+                    double time = server.awaitWorkers() / 1e6;
+                    if (workers == 1) {
+                        singleWorkerTime = time;
+                    }
+                    Net network = DistributedWorker.createNetwork();
+                    network.setParameters(server.getParameters());
+                    double samplesPerSecond = DistributedWorker.TRAINING_SAMPLES * Integer.parseInt(epochs) / (time / 1e3);
+                    double speedup = singleWorkerTime / time;
+                    System.out.println(String.format(Locale.ROOT, "%s,%d,%d,%.0f,%.0f,%.2f,%.2f,%.6f,%d,%.0f,%.1f",
+                            mode == 0 ? "Synchronous" : "Bounded staleness", workers, modeStaleness, time,
+                            samplesPerSecond, speedup, speedup / workers, network.measureErrorOnTestData(test),
+                            server.getPushes(), server.getWaitNanos() / 1e6, server.getBytesTransferred() / 1e6));
+                }
+            }
+        }
+    }
+
+    // Same java binary, JVM options and class path as this JVM
+    private static Process startWorker(String address, String... args) throws IOException {
+        ArrayList<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(DistributedWorker.class.getName());
+        command.add(address);
+        command.addAll(List.of(args));
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+}
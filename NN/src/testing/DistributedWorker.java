@@ -0,0 +1,147 @@
+package testing;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import network.Dataset;
+import network.Initializer;
+import network.Net;
+import network.ParameterException;
+import network.Pruner;
+import network.Relu;
+import network.Sigmoid;
+import server.ParameterClient;
+
+// Worker process of distributed training with a server.ParameterServer. Every worker builds the same net from the
+// same seed and loads the same data, its shard is the range of training samples given by its number.
+// In every round it pulls the parameters, trains a number of mini-batches of its shard and pushes the difference.
+// The samples of the shard are shuffled every epoch. Pruning is not supported, all replicas need the same layout.
+// Arguments: <host:port> [epochs] [batches per round] [batch size] [learning rate]
+public class DistributedWorker {
+
+    static final int[] LAYER_DIMENSIONS = {784, 50, 50, 10};
+    static final int TRAINING_SAMPLES = 30000;
+    static final int TEST_SAMPLES = 10000;
+    private static final long SEED = 42;
+
+    // A view of the samples of a dataset at the given positions of samples
+    private static class Subset implements Dataset {
+
+        private final Dataset data;
+        private final int[] samples;
+        private final int from;
+        private final int size;
+
+        Subset(Dataset data, int[] samples, int from, int size) {
+            this.data = data;
+            this.samples = samples;
+            this.from = from;
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int getInputSize() {
+            return data.getInputSize();
+        }
+
+        @Override
+        public int getTargetSize() {
+            return data.getTargetSize();
+        }
+
+        @Override
+        public void getInput(int sample, double[] destination, int offset) {
+            data.getInput(samples[from + sample], destination, offset);
+        }
+
+        @Override
+        public void getTarget(int sample, double[] destination, int offset) {
+            data.getTarget(samples[from + sample], destination, offset);
+        }
+
+        @Override
+        public void getInput(int sample, float[] destination, int offset) {
+            data.getInput(samples[from + sample], destination, offset);
+        }
+
+        @Override
+        public void getTarget(int sample, float[] destination, int offset) {
+            data.getTarget(samples[from + sample], destination, offset);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, ParameterException {
+        if (args.length < 1) {
+            System.err.println("Arguments: <host:port> [epochs] [batches per round] [batch size] [learning rate]");
+            return;
+        }
+        String[] address = args[0].split(":");
+        int epochs = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int batchesPerRound = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int batchSize = args.length > 3 ? Integer.parseInt(args[3]) : 32;
+        double learningRate = args.length > 4 ? Double.parseDouble(args[4]) : 0.2;
+
+        Dataset training = loadData()[0];
+        Net network = createNetwork();
+        try (ParameterClient client = new ParameterClient(address[0], Integer.parseInt(address[1]))) {
+            int worker = client.register(network.getParameters());
+            int workers = client.getWorkers();
+            int from = (int) ((long) training.size() * worker / workers);
+            int to = (int) ((long) training.size() * (worker + 1) / workers);
+            int[] shard = new int[to - from];
+            for (int i = 0; i < shard.length; i++) {
+                shard[i] = from + i;
+            }
+
+            SplittableRandom random = new SplittableRandom(SEED + worker);
+            double[] parameters = new double[network.getNumberOfParameters()];
+            int roundSamples = batchesPerRound * batchSize;
+            for (int epoch = 0; epoch < epochs; epoch++) {
+                shuffle(shard, random);
+                for (int start = 0; start < shard.length; start += roundSamples) {
+                    client.pull(parameters);
+                    network.setParameters(parameters);
+                    Subset round = new Subset(training, shard, start, Math.min(roundSamples, shard.length - start));
+                    network.training(round, learningRate, 1, false, batchSize);
+                    double[] difference = network.getParameters();
+                    for (int i = 0; i < difference.length; i++) {
+                        difference[i] -= parameters[i];
+                    }
+                    client.push(difference);
+                }
+            }
+        }
+    }
+
+    static Net createNetwork() {
+        Net network = new Net(LAYER_DIMENSIONS, new Relu(), new Sigmoid(), new Pruner(), Initializer.HE, SEED);
+        network.useArrayEngine = true;
+        return network;
+    }
+
+    // Training and test data, MNIST if its CSV files are present, otherwise the synthetic images of
+    // QuantizationBenchmark, which are the same in every process
+    static Dataset[] loadData() {
+        try {
+            return new Dataset[]{MnistDataset.load("mnist_train.csv", TRAINING_SAMPLES, 255),
+                    MnistDataset.load("mnist_test.csv", TEST_SAMPLES, 255)};
+        } catch (IOException ex) {
+            double[][] prototypes = QuantizationBenchmark.createPrototypes();
+            return new Dataset[]{QuantizationBenchmark.createImages(prototypes, TRAINING_SAMPLES),
+                    QuantizationBenchmark.createImages(prototypes, TEST_SAMPLES)};
+        }
+    }
+
+    private static void shuffle(int[] samples, SplittableRandom random) {
+        for (int i = samples.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int temp = samples[j];
+            samples[j] = samples[i];
+            samples[i] = temp;
+        }
+    }
+}
@@ -1,36 +1,35 @@
 package testing;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import network.ArrayDataset;
+import network.Dataset;
+import network.FloatDataset;
+import network.Initializer;
 import network.Net;
 import network.ParameterException;
 import network.Pruner;
 import network.Relu;
 import network.Sigmoid;
 
-public class Experiment extends Thread {
+// Repetitions can run as separate tasks, see ExperimentScheduler. Every thread keeps the net of its last repetition
+// and resets it in place if the next repetition needs the same net, whichever experiment it belongs to.
+public class Experiment implements Runnable {
 
-    private Net network;
+    // The net of the worker thread and what it was built from: dataset, layer dimensions and pruning ratio
+    private record WorkerNetwork(String key, Net network) {
+    }
+
+    private static final ThreadLocal<WorkerNetwork> workerNetworks = new ThreadLocal<>();
 
-    private double[][] trainingDurations;
-    private double[][] predictionDurations;
-    private double[][] outputErrorsOnIteration;
-    private int[][] numbersOfConnections;
+    private ResultsSink results;
     private int repetitions;
     private String dataset;
 
-    private double[] avgPredictionDurations;
-    private double[] avgTrainingDurations;
-    private double[] avgErrorsOnIteration;
-    private int[] avgNumbersOfConnections;
-
-    private double[][] trainingInput;
-    private double[][] trainingTarget;
-
-    private double[][] testInput;
-    private double[][] testTarget;
+    private Dataset trainingData;
+    private Dataset testData;
 
     private Pruner pruner;
     private double pruningRatio;
@@ -46,6 +45,9 @@ public class Experiment extends Thread {
     private boolean useWeightImpactPruning;
     private boolean useWeightStabilityPruning;
     private boolean useActivationPruning;
+    // Adds the TrainingProfile of every training iteration to the results, off by default because the timing
+    // of every sample adds to the training duration
+    private boolean useProfiling;
 
     public Experiment(String dataset, int repetitions, int trainingIterations, pruning pruningMethod, double pruningRatio) throws ParameterException {
         this.dataset = dataset;
@@ -54,10 +56,17 @@ public class Experiment extends Thread {
         this.pruningRatio = pruningRatio;
         this.pruningMethod = pruningMethod;
 
-        this.trainingDurations = new double[repetitions][trainingIterations];
-        this.predictionDurations = new double[repetitions][trainingIterations];
-        this.outputErrorsOnIteration = new double[repetitions][trainingIterations];
-        this.numbersOfConnections = new int[repetitions][trainingIterations];
+        // Results of an earlier, interrupted run of the same experiment are resumed
+        try {
+            this.results = new ResultsSink(Paths.get(getName() + "_results.csv"), repetitions, trainingIterations);
+            if (results.getNumberOfFinishedRepetitions() > 0) {
+                System.out.println("Resuming Experiment: " + getName() + ", " + results.getNumberOfFinishedRepetitions()
+                        + " repetitions already finished");
+            }
+        } catch (IOException ex) {
+            System.err.println("Cannot write results of " + getName() + ": " + ex.getMessage());
+            this.results = new ResultsSink(repetitions, trainingIterations);
+        }
 
         this.pruner = new Pruner();
         pruner.setRatio(this.pruningRatio);
@@ -86,10 +95,7 @@ public class Experiment extends Thread {
                 this.epochsPerTrainingIteration = 1;
                 this.shuffleTrainingData = false;
                 this.layerDimensions = new int[]{784, 50, 50, 10};
-                this.network = new Net(layerDimensions, new Relu(), new Sigmoid(), pruner);
-                synchronized (this) {
-                    this.generateMNIST();
-                }
+                this.generateMNIST();
             }
             default -> {
                 this.learningRate = 0.05;
@@ -97,16 +103,31 @@ public class Experiment extends Thread {
                 this.epochsPerTrainingIteration = 1;
                 this.shuffleTrainingData = true;
                 this.layerDimensions = new int[]{1, 10, 10, 10, 1};
-                this.network = new Net(layerDimensions, new Sigmoid(), new Sigmoid(), pruner);
                 this.generateExampleData(sampleSize, "lin");
             }
 
         }
-        // set best found hyperparameter for given dataset
+    }
 
-        network.useActivationPruning = useActivationPruning;
-        network.useWeightImpactPruning = useWeightImpactPruning;
-        network.useWeightStabilityPruning = useWeightStabilityPruning;
+    private Net createNetwork(int seed) {
+        Net network = switch (dataset) {
+            case "MNIST" -> new Net(layerDimensions, new Relu(), new Sigmoid(), pruner.copy(), Initializer.UNIFORM, seed);
+            default -> new Net(layerDimensions, new Sigmoid(), new Sigmoid(), pruner.copy(), Initializer.UNIFORM, seed);
+        };
+        network.useArrayEngine = true;
+        return network;
+    }
+
+    // The net of the calling thread if it was built for the same net as this experiment's, otherwise a new one that
+    // replaces it, so every thread keeps one net at most
+    private Net getWorkerNetwork() {
+        String key = dataset + Arrays.toString(layerDimensions) + pruningRatio;
+        WorkerNetwork workerNetwork = workerNetworks.get();
+        if (workerNetwork == null || !workerNetwork.key().equals(key)) {
+            workerNetwork = new WorkerNetwork(key, createNetwork(0));
+            workerNetworks.set(workerNetwork);
+        }
+        return workerNetwork.network();
     }
 
     @Override
@@ -114,126 +135,108 @@ public class Experiment extends Thread {
         System.out.println("Starting Experiment: " + getTestId());
         // Multiple repetitions for archieving average testresults
         for (int i = 0; i < repetitions; i++) {
-            // Multiple training sessions to see the networks training progress
-            for (int j = 0; j < trainingIterations; j++) {
-                numbersOfConnections[i][j] = network.getNumberOfConnections();
-                // Learn the training data
-                double startTime = System.currentTimeMillis();
-                network.training(trainingInput, trainingTarget, learningRate, epochsPerTrainingIteration, shuffleTrainingData);
-                double endTime = System.currentTimeMillis();
-                double duration = endTime - startTime;
-                trainingDurations[i][j] = duration;
-
-                // Test the network with testdata
-                startTime = System.currentTimeMillis();
-                double avgError = network.measureErrorOnTestData(testInput, testTarget);
-                endTime = System.currentTimeMillis();
-                double avgPredictionTime = endTime - startTime;
-
-                outputErrorsOnIteration[i][j] = avgError;
-                predictionDurations[i][j] = avgPredictionTime;
-            }
-            network.reset();
+            runRepetition(i);
         }
         System.out.println("Finished Experiment: " + getTestId());
     }
 
-    @Override
-    public String toString() {
-        calcAverageTestResults();
-        String result = "Dataset,Training iteration,Pruning method,Pruning ratio,Output error,Duration (Training),Duration (Prediction),Number of connections";
-        for (int i = 0; i < trainingIterations; i++) {
-            result += "\n" + dataset + "," + i + "," + pruningMethod + "," + pruningRatio + "," + avgErrorsOnIteration[i] + "," + avgTrainingDurations[i] + ","
-                    + avgPredictionDurations[i] + "," + avgNumbersOfConnections[i];
+    // Runs one repetition on the net of the calling thread, see getWorkerNetwork. Repetitions write to their own row
+    // of the results, so different repetitions may run on different threads at the same time.
+    public void runRepetition(int i) {
+        if (results.isFinished(i)) {
+            return;
         }
-        return result;
+        // Seeded with the repetition, so a resumed or repeated experiment starts every repetition with the same weights
+        Net network = getWorkerNetwork();
+        network.reset(Initializer.UNIFORM, i);
+        // set best found hyperparameter for given dataset
+        network.useActivationPruning = useActivationPruning;
+        network.useWeightImpactPruning = useWeightImpactPruning;
+        network.useWeightStabilityPruning = useWeightStabilityPruning;
+        network.useProfiling = useProfiling;
+        // Multiple training sessions to see the networks training progress
+        for (int j = 0; j < trainingIterations; j++) {
+            int numberOfConnections = network.getNumberOfConnections();
+            // Learn the training data
+            double startTime = System.currentTimeMillis();
+            network.training(trainingData, learningRate, epochsPerTrainingIteration, shuffleTrainingData);
+            double endTime = System.currentTimeMillis();
+            double duration = endTime - startTime;
+
+            // Test the network with testdata
+            startTime = System.currentTimeMillis();
+            double avgError = network.measureErrorOnTestData(testData);
+            endTime = System.currentTimeMillis();
+            double avgPredictionTime = endTime - startTime;
+
+            try {
+                results.add(i, j, avgError, duration, avgPredictionTime, numberOfConnections,
+                        useProfiling ? network.getProfile() : null);
+            } catch (IOException ex) {
+                System.err.println("Cannot write results of " + getName() + ": " + ex.getMessage());
+            }
+            // Every row holds the profile of its own training iteration
+            if (useProfiling) {
+                network.getProfile().reset();
+            }
+        }
+        try {
+            results.finishRepetition(i);
+        } catch (IOException ex) {
+            System.err.println("Cannot write results of " + getName() + ": " + ex.getMessage());
+        }
+    }
+
+    public void setProfiling(boolean useProfiling) {
+        this.useProfiling = useProfiling;
     }
 
-    private void calcAverageTestResults() {
-        this.avgPredictionDurations = new double[trainingIterations];
-        this.avgTrainingDurations = new double[trainingIterations];
-        this.avgErrorsOnIteration = new double[trainingIterations];
-        this.avgNumbersOfConnections = new int[trainingIterations];
+    public int getRepetitions() {
+        return repetitions;
+    }
 
+    // Average results of all finished repetitions, the variance columns show how much the repetitions differ
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("Dataset,Training iteration,Pruning method,Pruning ratio,Output error,Duration (Training),"
+                + "Duration (Prediction),Number of connections,Output error variance,Duration (Training) variance");
         for (int i = 0; i < trainingIterations; i++) {
-            double avgPredictionDuration = 0;
-            double avgTrainingDuration = 0;
-            double avgError = 0;
-            double avgNumberOfConnections = 0;
-
-            for (int j = 0; j < repetitions; j++) {
-                avgPredictionDuration += predictionDurations[j][i];
-                avgTrainingDuration += trainingDurations[j][i];
-                avgError += outputErrorsOnIteration[j][i];
-                avgNumberOfConnections += numbersOfConnections[j][i];
-            }
-            avgPredictionDurations[i] = avgPredictionDuration / repetitions;
-            avgTrainingDurations[i] = avgTrainingDuration / repetitions;
-            avgErrorsOnIteration[i] = avgError / repetitions;
-            avgNumbersOfConnections[i] = (int) (avgNumberOfConnections / repetitions);
+            result.append('\n').append(dataset).append(',').append(i).append(',').append(pruningMethod).append(',').append(pruningRatio)
+                    .append(',').append(results.getOutputErrors(i).getMean())
+                    .append(',').append(results.getTrainingDurations(i).getMean())
+                    .append(',').append(results.getPredictionDurations(i).getMean())
+                    .append(',').append((int) results.getNumbersOfConnections(i).getMean())
+                    .append(',').append(results.getOutputErrors(i).getVariance())
+                    .append(',').append(results.getTrainingDurations(i).getVariance());
         }
+        return result.toString();
     }
 
-    private synchronized void generateMNIST() {
-        double[][] inputs = new double[this.sampleSize][784];
-        double[][] targets = new double[this.sampleSize][10];
-
-        int counter = 0;
+    private void generateMNIST() {
         try {
-            FileReader filereader = new FileReader("mnist_train.csv");
-            try (BufferedReader reader = new BufferedReader(filereader)) {
-                String line = reader.readLine();
-                while (line != null && counter < this.sampleSize) {
-                    String[] eintraege = line.split(",");
-                    int z = Integer.parseInt(eintraege[0]);
-                    targets[counter][z] = 1;
-                    for (int i = 1; i < 785; i++) {
-                        inputs[counter][i - 1] = Double.parseDouble(eintraege[i]);
-                    }
-                    counter++;
-                    line = reader.readLine();
-                }
-            }
-        } catch (IOException | NumberFormatException ex) {
+            // The CSV files are converted to a binary file on the first run, later runs only map it.
+            // All MNIST experiments share the same read-only datasets.
+            this.trainingData = DatasetRegistry.get("MNIST training " + sampleSize,
+                    () -> MnistDataset.load("mnist_train.csv", sampleSize, 255));
+            // The test data has never been normalized, kept like this to stay comparable with earlier results
+            this.testData = DatasetRegistry.get("MNIST test", () -> MnistDataset.load("mnist_test.csv", 10000, 1));
+        } catch (IOException ex) {
             System.err.println("Cannot read training data: " + ex.getMessage());
+            this.trainingData = new ArrayDataset(new double[this.sampleSize][784], new double[this.sampleSize][10]);
+            this.testData = new ArrayDataset(new double[10000][784], new double[10000][10]);
         }
-        // Normalize data
-        for (double[] input : inputs) {
-            for (int i = 0; i < input.length; i++) {
-                input[i] = input[i] / 255;
-            }
-        }
-        this.trainingInput = inputs;
-        this.trainingTarget = targets;
-
-        inputs = new double[10000][784];
-        targets = new double[10000][10];
+    }
 
-        counter = 0;
+    private void generateExampleData(int size, String function) {
         try {
-            FileReader filereader = new FileReader("mnist_test.csv");
-            try (BufferedReader reader = new BufferedReader(filereader)) {
-                String line = reader.readLine();
-                while (line != null && counter < 10000) {
-                    String[] entries = line.split(",");
-                    int targetNumber = Integer.parseInt(entries[0]);
-                    targets[counter][targetNumber] = 1;
-                    for (int i = 1; i < 785; i++) {
-                        inputs[counter][i - 1] = Double.parseDouble(entries[i]);
-                    }
-                    counter++;
-                    line = reader.readLine();
-                }
-            }
-        } catch (IOException | NumberFormatException ex) {
-            System.err.println("Cannot read training data: " + ex.getMessage());
+            this.trainingData = DatasetRegistry.get(function + " training " + size, () -> createExampleData(size, function));
+            this.testData = DatasetRegistry.get(function + " test " + size, () -> createExampleData(size, function));
+        } catch (IOException ex) {
+            System.err.println("Cannot create example data: " + ex.getMessage());
         }
-        this.testInput = inputs;
-        this.testTarget = targets;
-
     }
 
-    private void generateExampleData(int size, String function) {
+    static Dataset createExampleData(int size, String function) {
 
         double[][] inputs = new double[size][1];
         double[][] targets = new double[size][1];
@@ -252,34 +255,16 @@ public class Experiment extends Thread {
                 }
             }
         }
-        this.trainingInput = inputs;
-        this.trainingTarget = targets;
-
-        inputs = new double[size][1];
-        targets = new double[size][1];
-
-        switch (function) {
-            case "sin" -> {
-                for (int i = 0; i < size; i++) {
-                    inputs[i][0] = Math.random();
-                    targets[i][0] = (Math.sin(inputs[i][0]) + 1) / 2;
-                }
-            }
-            default -> {
-                for (int i = 0; i < size; i++) {
-                    inputs[i][0] = Math.random();
-                    targets[i][0] = inputs[i][0] / 2;
-                }
-            }
-        }
-        this.testInput = inputs;
-        this.testTarget = targets;
-
+        return FloatDataset.of(inputs, targets);
     }
 
     public String getTestId() {
-        String result = LocalDateTime.now().toString() + "_" + dataset + "_" + pruningMethod.toString().replace(" ", "_") + "_" + ((int) (pruningRatio * 100));
-        return result;
+        return LocalDateTime.now().toString() + "_" + getName();
+    }
+
+    // Same for every run of this experiment, unlike the test id
+    public final String getName() {
+        return dataset + "_" + pruningMethod.toString().replace(" ", "_") + "_" + ((int) (pruningRatio * 100));
     }
 
     public enum pruning {
@@ -0,0 +1,85 @@
+package testing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import network.ParameterException;
+
+// Runs experiments on a fixed number of worker threads instead of starting one thread per experiment,
+// so the experiments do not compete for the CPUs and measured durations stay comparable between runs.
+// Every repetition of an experiment is queued as a task of its own. With pinning all repetitions of an
+// experiment run one after another on the same worker.
+public class ExperimentScheduler {
+
+    private final int workers;
+    private final boolean pinExperiments;
+
+    private int numberOfTasks;
+    private int finishedTasks;
+    private long startTime;
+
+    public ExperimentScheduler(int workers, boolean pinExperiments) throws ParameterException {
+        if (workers < 1) {
+            throw new ParameterException("At least one worker is needed to run experiments.");
+        }
+        this.workers = workers;
+        this.pinExperiments = pinExperiments;
+    }
+
+    public void run(List<Experiment> experiments) throws InterruptedException {
+        ExecutorService[] executors = new ExecutorService[pinExperiments ? workers : 1];
+        for (int i = 0; i < executors.length; i++) {
+            executors[i] = pinExperiments ? Executors.newSingleThreadExecutor() : Executors.newFixedThreadPool(workers);
+        }
+
+        numberOfTasks = 0;
+        finishedTasks = 0;
+        for (Experiment experiment : experiments) {
+            numberOfTasks += experiment.getRepetitions();
+        }
+        startTime = System.nanoTime();
+
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < experiments.size(); i++) {
+            Experiment experiment = experiments.get(i);
+            ExecutorService executor = executors[i % executors.length];
+            for (int repetition = 0; repetition < experiment.getRepetitions(); repetition++) {
+                int r = repetition;
+                tasks.add(executor.submit(() -> {
+                    experiment.runRepetition(r);
+                    finished(experiment, r);
+                }));
+            }
+        }
+
+        try {
+            for (Future<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    System.err.println("Experiment failed: " + e.getCause());
+                }
+            }
+        } finally {
+            for (ExecutorService executor : executors) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private synchronized void finished(Experiment experiment, int repetition) {
+        finishedTasks++;
+        long elapsed = System.nanoTime() - startTime;
+        long remaining = elapsed / finishedTasks * (numberOfTasks - finishedTasks);
+        System.out.println("Finished repetition " + (repetition + 1) + "/" + experiment.getRepetitions() + " of " + experiment.getTestId()
+                + " (" + finishedTasks + "/" + numberOfTasks + " tasks, elapsed " + format(elapsed) + ", ETA " + format(remaining) + ")");
+    }
+
+    private static String format(long nanoseconds) {
+        long seconds = nanoseconds / 1_000_000_000L;
+        return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+}
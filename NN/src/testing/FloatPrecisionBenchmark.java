@@ -0,0 +1,85 @@
+package testing;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import network.Dataset;
+import network.Net;
+import network.Relu;
+import network.Sigmoid;
+
+// Trains the same initial net in double and in float precision on the MNIST and the linear function
+// experiment and compares training and prediction throughput and the final error on the test data.
+// MNIST is skipped when its CSV files are missing. Arguments: [epochs] [MNIST samples]
+public class FloatPrecisionBenchmark {
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        int epochs = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int mnistSamples = args.length > 1 ? Integer.parseInt(args[1]) : 30000;
+
+        try {
+            Dataset training = MnistDataset.load("mnist_train.csv", mnistSamples, 255);
+            Dataset test = MnistDataset.load("mnist_test.csv", 10000, 255);
+            compare("MNIST", new Net(new int[]{784, 50, 50, 10}, new Relu(), new Sigmoid()), training, test, 0.01, epochs);
+        } catch (IOException ex) {
+            System.err.println("MNIST skipped: " + ex.getMessage());
+        }
+
+        Dataset training = Experiment.createExampleData(10000, "lin");
+        Dataset test = Experiment.createExampleData(10000, "lin");
+        compare("Linear Function", new Net(new int[]{1, 10, 10, 10, 1}, new Sigmoid(), new Sigmoid()), training, test, 0.05,
+                epochs);
+    }
+
+    private static void compare(String name, Net network, Dataset training, Dataset test, double learningRate, int epochs)
+            throws IOException, ClassNotFoundException {
+        // Warmup on throwaway copies, so the measured nets start from the same weights
+        run(createNet(network, false), training, test, learningRate, 1);
+        run(createNet(network, true), training, test, learningRate, 1);
+
+        Net doubleNet = createNet(network, false);
+        Net floatNet = createNet(network, true);
+        double[] doubleResult = run(doubleNet, training, test, learningRate, epochs);
+        double[] floatResult = run(floatNet, training, test, learningRate, epochs);
+        System.out.println(name + " double: " + format(doubleResult));
+        System.out.println(name + " float:  " + format(floatResult));
+        System.out.println(name + " speedup training " + floatResult[0] / doubleResult[0] + ", prediction "
+                + floatResult[1] / doubleResult[1] + ", error difference " + (floatResult[2] - doubleResult[2]));
+    }
+
+    // Returns training samples per second, predicted samples per second and the error on the test data
+    private static double[] run(Net network, Dataset training, Dataset test, double learningRate, int epochs) {
+        long startTime = System.nanoTime();
+        network.training(training, learningRate, epochs, false);
+        double trainingSeconds = (System.nanoTime() - startTime) / 1e9;
+
+        network.measureErrorOnTestData(test);
+        startTime = System.nanoTime();
+        double error = network.measureErrorOnTestData(test);
+        double predictionSeconds = (System.nanoTime() - startTime) / 1e9;
+        return new double[]{epochs * training.size() / trainingSeconds, test.size() / predictionSeconds, error};
+    }
+
+    private static String format(double[] result) {
+        return String.format("%.0f training samples/s, %.0f predicted samples/s, test error %.6f", result[0], result[1], result[2]);
+    }
+
+    private static Net createNet(Net network, boolean floatPrecision) throws IOException, ClassNotFoundException {
+        Net copy = copy(network);
+        copy.useArrayEngine = !floatPrecision;
+        copy.useFloatPrecision = floatPrecision;
+        return copy;
+    }
+
+    private static Net copy(Net network) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(network);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (Net) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package testing;
+
+import java.util.Random;
+import network.FastSigmoid;
+import network.Kernels;
+
+// Microbenchmarks of the kernels of the array engines, the scalar loops against the Vector API at every
+// vector size the hardware has. The vector size is fixed per JVM (see network.Kernels), so every setting runs
+// in its own JVM started with --add-modules jdk.incubator.vector and -Dnetwork.kernels=<setting>.
+// Prints one CSV row per kernel, the time per element is the time per operation divided by the length.
+// Arguments: [vector lengths, comma separated] [measured rounds]
+public class KernelBenchmarks {
+
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int OPERATIONS_PER_ROUND = 10000;
+    private static final String[] SETTINGS = {"scalar", "128", "256", "512"};
+
+    public static void main(String[] args) throws Exception {
+        String lengths = args.length > 0 ? args[0] : "50,784";
+        String rounds = args.length > 1 ? args[1] : "10";
+
+        String setting = System.getProperty("network.kernels");
+        if (setting != null) {
+            Kernels kernels = Kernels.get();
+            if (!setting.equals("scalar") && !setting.equals(String.valueOf(kernels.getVectorBits()))) {
+                System.err.println("Skipping " + setting + " bit vectors, the kernels are " + kernels);
+                return;
+            }
+            Benchmark benchmark = new Benchmark(WARMUP_ROUNDS, Integer.parseInt(rounds));
+            for (String length : lengths.split(",")) {
+                run(benchmark, kernels, Integer.parseInt(length));
+            }
+            return;
+        }
+
+        System.out.println(Benchmark.HEADER);
+        String java = ProcessHandle.current().info().command().orElse("java");
+        for (String kernels : SETTINGS) {
+            Process process = new ProcessBuilder(java, "--add-modules", "jdk.incubator.vector", "-Dnetwork.kernels=" + kernels,
+                    "-cp", System.getProperty("java.class.path"), KernelBenchmarks.class.getName(), lengths, rounds)
+                    .inheritIO().start();
+            process.waitFor();
+        }
+    }
+
+    private static void run(Benchmark benchmark, Kernels kernels, int length) throws Exception {
+        Random random = new Random(42);
+        double[] a = randomArray(random, 4 * length);
+        double[] b = randomArray(random, 4 * length);
+        double[] c = randomArray(random, length);
+        double[] d = new double[length];
+        float[] floatA = toFloat(a);
+        float[] floatB = toFloat(b);
+        float[] floatOutput = new float[4];
+        byte[] byteA = toByte(a);
+        byte[] byteB = toByte(b);
+        int[] intOutput = new int[4];
+        double[] output = new double[4];
+        FastSigmoid fastSigmoid = new FastSigmoid();
+        String parameters = kernels + " " + length;
+
+        benchmark.measure("dot", parameters, OPERATIONS_PER_ROUND, () -> kernels.dot(a, 0, b, 0, length));
+        benchmark.measure("dot (float)", parameters, OPERATIONS_PER_ROUND, () -> kernels.dot(floatA, 0, floatB, 0, length));
+        benchmark.measure("dot4", parameters, OPERATIONS_PER_ROUND, () -> {
+            kernels.dot4(a, 0, b, 0, length, length, output, 0, 1);
+            return output[3];
+        });
+        benchmark.measure("dot4 (float)", parameters, OPERATIONS_PER_ROUND, () -> {
+            kernels.dot4(floatA, 0, floatB, 0, length, length, floatOutput, 0, 1);
+            return floatOutput[3];
+        });
+        benchmark.measure("dot (int8)", parameters, OPERATIONS_PER_ROUND, () -> kernels.dot(byteA, 0, byteB, 0, length));
+        benchmark.measure("dot4 (int8)", parameters, OPERATIONS_PER_ROUND, () -> {
+            kernels.dot4(byteA, 0, byteB, 0, length, length, intOutput, 0, 1);
+            return intOutput[3];
+        });
+        // Alternating signs keep the values of y bounded
+        benchmark.measure("axpy", parameters, OPERATIONS_PER_ROUND, new AlternatingOperation() {
+            @Override
+            double run(double sign) {
+                kernels.axpy(sign, a, 0, c, 0, length);
+                return c[0];
+            }
+        });
+        benchmark.measure("axpy (float)", parameters, OPERATIONS_PER_ROUND, new AlternatingOperation() {
+            @Override
+            double run(double sign) {
+                kernels.axpy((float) sign, floatA, 0, floatB, 0, length);
+                return floatB[0];
+            }
+        });
+        benchmark.measure("updateWeights", parameters, OPERATIONS_PER_ROUND, new AlternatingOperation() {
+            @Override
+            double run(double sign) {
+                kernels.updateWeights(sign * 0.01, a, 0, b, c, d, 0, length);
+                return b[0];
+            }
+        });
+        benchmark.measure("relu", parameters, OPERATIONS_PER_ROUND, () -> {
+            kernels.relu(0.01, a, d, 0, length, null);
+            return d[0];
+        });
+        benchmark.measure("reluDerivative", parameters, OPERATIONS_PER_ROUND, () -> {
+            kernels.reluDerivative(0.01, a, b, d, 0, length);
+            return d[0];
+        });
+        benchmark.measure("sigmoid", parameters, OPERATIONS_PER_ROUND, () -> {
+            kernels.sigmoid(a, d, 0, length, null);
+            return d[0];
+        });
+        benchmark.measure("FastSigmoid", parameters, OPERATIONS_PER_ROUND, () -> {
+            fastSigmoid.apply(a, d, 0, length, null, null);
+            return d[0];
+        });
+        benchmark.measure("sigmoidDerivative", parameters, OPERATIONS_PER_ROUND, () -> {
+            kernels.sigmoidDerivative(c, b, d, 0, length);
+            return d[0];
+        });
+    }
+
+    private abstract static class AlternatingOperation implements Benchmark.Operation {
+
+        private double sign = 1;
+
+        abstract double run(double sign);
+
+        @Override
+        public double run() {
+            sign = -sign;
+            return run(sign);
+        }
+    }
+
+    private static double[] randomArray(Random random, int length) {
+        double[] array = new double[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = random.nextDouble() * 2 - 1;
+        }
+        return array;
+    }
+
+    private static byte[] toByte(double[] array) {
+        byte[] result = new byte[array.length];
+        for (int i = 0; i < array.length; i++) {
+            result[i] = (byte) Math.round(array[i] * 127);
+        }
+        return result;
+    }
+
+    private static float[] toFloat(double[] array) {
+        float[] result = new float[array.length];
+        for (int i = 0; i < array.length; i++) {
+            result[i] = (float) array[i];
+        }
+        return result;
+    }
+}
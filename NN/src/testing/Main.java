@@ -3,6 +3,7 @@ package testing;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.List;
 import network.ParameterException;
 
 public class Main {
@@ -10,7 +11,14 @@ public class Main {
     static ArrayList<Experiment> experiments = new ArrayList<>();
     static double[] pruningRatios = new double[]{0.05, 0.1, 0.2, 0.3, 0.4, 0.5};
 
+    // Optional arguments: number of worker threads for the experiments (all cores by default),
+    // "pin" to run all repetitions of an experiment on the same worker and "profile" to add the TrainingProfile
+    // of every training iteration to the results
     public static void main(String[] args) {
+        int workers = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        List<String> options = args.length > 1 ? List.of(args).subList(1, args.length) : List.of();
+        boolean pinExperiments = options.contains("pin");
+        boolean profile = options.contains("profile");
         try {
             experiments.add(new Experiment("MNIST", 10, 50, Experiment.pruning.NONE, 0));
             experiments.add(new Experiment("Linear Function", 100, 1000, Experiment.pruning.NONE, 0));
@@ -30,20 +38,18 @@ public class Main {
             System.err.print(e.getMessage());
         }
 
-        runTests();
+        for (Experiment experiment : experiments) {
+            experiment.setProfiling(profile);
+        }
+        runTests(workers, pinExperiments);
 
     }
 
-    private static void runTests() {
-        for (Experiment experiment : experiments) {
-            experiment.start();
-        }
-        for (Experiment experiment : experiments) {
-            try {
-                experiment.join();
-            } catch (InterruptedException e) {
-                System.err.print(e.getMessage());
-            }
+    private static void runTests(int workers, boolean pinExperiments) {
+        try {
+            new ExperimentScheduler(workers, pinExperiments).run(experiments);
+        } catch (ParameterException | InterruptedException e) {
+            System.err.print(e.getMessage());
         }
 
         System.out.println(experiments.get(0));
@@ -0,0 +1,179 @@
+package testing;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import network.Dataset;
+
+// MNIST stored in a compact binary file that is memory-mapped instead of parsed on every start.
+// The file starts with a header of five ints (magic number, version, samples, pixels, classes),
+// followed by one record per sample: the label as one byte and the pixels as unsigned bytes.
+public class MnistDataset implements Dataset {
+
+    private static final int MAGIC = 0x4D4E5354;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 5 * Integer.BYTES;
+    private static final int DIGITS = 10;
+
+    private final MappedByteBuffer buffer;
+    private final int size;
+    private final int pixels;
+    private final int classes;
+    private final int recordSize;
+    private final double divisor;
+
+    private MnistDataset(MappedByteBuffer buffer, int maxSamples, double divisor) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a MNIST binary file of version " + VERSION);
+        }
+        this.size = Math.min(maxSamples, buffer.getInt(8));
+        this.pixels = buffer.getInt(12);
+        this.classes = buffer.getInt(16);
+        this.recordSize = 1 + pixels;
+        this.divisor = divisor;
+    }
+
+    // Opens the binary version of csvFile and creates it first if it does not exist yet.
+    // Every pixel is divided by divisor when it is read.
+    public static synchronized MnistDataset load(String csvFile, int maxSamples, double divisor) throws IOException {
+        Path binaryFile = Paths.get(csvFile.replaceAll("\\.csv$", "") + ".bin");
+        if (!Files.exists(binaryFile)) {
+            convert(Paths.get(csvFile), binaryFile);
+        }
+        return open(binaryFile, maxSamples, divisor);
+    }
+
+    public static MnistDataset open(Path binaryFile, int maxSamples, double divisor) throws IOException {
+        try (FileChannel channel = FileChannel.open(binaryFile, StandardOpenOption.READ)) {
+            return new MnistDataset(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), maxSamples, divisor);
+        }
+    }
+
+    // One-time conversion of a CSV file with the label followed by the pixels on every line. Every line must have
+    // as many pixels as the first one, pixels must be in 0..255 and labels in 0..127, the number of classes is the
+    // largest label plus one but at least the 10 digits of MNIST. Written to a temporary file first, which is
+    // deleted if the conversion fails, so a failed or interrupted conversion never leaves a broken binary file.
+    public static void convert(Path csvFile, Path binaryFile) throws IOException {
+        Path temporaryFile = Paths.get(binaryFile + ".tmp");
+        boolean converted = false;
+        try {
+            int samples = 0;
+            int pixels = -1;
+            int classes = DIGITS;
+            try (BufferedReader reader = new BufferedReader(new FileReader(csvFile.toFile()));
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(0);
+                out.writeInt(0);
+                out.writeInt(0);
+
+                String line = reader.readLine();
+                while (line != null) {
+                    String[] entries = line.split(",");
+                    if (pixels < 0) {
+                        pixels = entries.length - 1;
+                    } else if (entries.length - 1 != pixels) {
+                        throw new IOException("Cannot convert " + csvFile + ": line " + (samples + 1) + " has "
+                                + (entries.length - 1) + " pixels instead of " + pixels);
+                    }
+                    int label = parse(csvFile, samples, entries[0], Byte.MAX_VALUE);
+                    classes = Math.max(classes, label + 1);
+                    out.writeByte(label);
+                    for (int i = 1; i < entries.length; i++) {
+                        out.writeByte(parse(csvFile, samples, entries[i], 255));
+                    }
+                    samples++;
+                    line = reader.readLine();
+                }
+            }
+
+            // Sample, pixel and class count are known only now
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+                ByteBuffer counts = ByteBuffer.allocate(3 * Integer.BYTES).putInt(samples).putInt(Math.max(0, pixels))
+                        .putInt(classes);
+                counts.flip();
+                channel.write(counts, 8);
+            }
+            Files.move(temporaryFile, binaryFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            converted = true;
+        } finally {
+            if (!converted) {
+                Files.deleteIfExists(temporaryFile);
+            }
+        }
+    }
+
+    // An entry of the line after the given number of samples, which must be in 0..max
+    private static int parse(Path csvFile, int samples, String entry, int max) throws IOException {
+        int value;
+        try {
+            value = Integer.parseInt(entry.trim());
+        } catch (NumberFormatException ex) {
+            throw new IOException("Cannot convert " + csvFile + ": line " + (samples + 1) + ": " + ex.getMessage());
+        }
+        if (value < 0 || value > max) {
+            throw new IOException("Cannot convert " + csvFile + ": line " + (samples + 1) + " has " + value
+                    + " out of 0.." + max);
+        }
+        return value;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getInputSize() {
+        return pixels;
+    }
+
+    @Override
+    public int getTargetSize() {
+        return classes;
+    }
+
+    @Override
+    public void getInput(int sample, double[] destination, int offset) {
+        int start = HEADER_SIZE + sample * recordSize + 1;
+        for (int i = 0; i < pixels; i++) {
+            destination[offset + i] = (buffer.get(start + i) & 0xFF) / divisor;
+        }
+    }
+
+    @Override
+    public void getTarget(int sample, double[] destination, int offset) {
+        int label = buffer.get(HEADER_SIZE + sample * recordSize);
+        for (int i = 0; i < classes; i++) {
+            destination[offset + i] = i == label ? 1 : 0;
+        }
+    }
+
+    @Override
+    public void getInput(int sample, float[] destination, int offset) {
+        int start = HEADER_SIZE + sample * recordSize + 1;
+        for (int i = 0; i < pixels; i++) {
+            destination[offset + i] = (float) ((buffer.get(start + i) & 0xFF) / divisor);
+        }
+    }
+
+    @Override
+    public void getTarget(int sample, float[] destination, int offset) {
+        int label = buffer.get(HEADER_SIZE + sample * recordSize);
+        for (int i = 0; i < classes; i++) {
+            destination[offset + i] = i == label ? 1 : 0;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package testing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+import network.Model;
+import network.Net;
+import network.ParameterException;
+import network.Pruner;
+import network.Relu;
+import network.Sigmoid;
+
+// Saves and loads a pruned MNIST shaped net (784x50x50x10) as a model file and with Java serialization,
+// prints the times as CSV, then the file sizes and the largest difference between the predictions of both.
+// Arguments: [epochs, every one ends with a weight impact pruning] [measured rounds]
+public class ModelFileBenchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int SAMPLES = 1000;
+    private static final Random random = new Random(42);
+
+    public static void main(String[] args) throws Exception, ParameterException {
+        int epochs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        Net network = new Net(new int[]{784, 50, 50, 10}, new Relu(), new Sigmoid(), new Pruner());
+        network.useArrayEngine = true;
+        network.useWeightImpactPruning = true;
+        double[][] input = createData(SAMPLES, 784);
+        double[][] target = createData(SAMPLES, 10);
+        network.training(input, target, 0.01, epochs, false);
+        String parameters = "784x50x50x10 " + network.getNumberOfConnections() + " connections";
+
+        Path directory = Files.createTempDirectory("model");
+        Path modelFile = directory.resolve("model.bin");
+        Path serializedFile = directory.resolve("net.ser");
+        Benchmark benchmark = new Benchmark(WARMUP_ROUNDS, rounds);
+        System.out.println(Benchmark.HEADER);
+        benchmark.measure("Net.save", parameters, 1, () -> {
+            network.save(modelFile);
+            return Files.size(modelFile);
+        });
+        benchmark.measure("Model.load", parameters, 1, () -> Model.load(modelFile).getNumberOfConnections());
+        benchmark.measure("ObjectOutputStream.writeObject", parameters, 1, () -> {
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(serializedFile)))) {
+                out.writeObject(network);
+            }
+            return Files.size(serializedFile);
+        });
+        benchmark.measure("ObjectInputStream.readObject", parameters, 1, () -> {
+            try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(serializedFile)))) {
+                return ((Net) in.readObject()).getNumberOfConnections();
+            }
+        });
+
+        Model model = Model.load(modelFile);
+        double difference = 0;
+        double[] output = new double[10];
+        for (double[] sample : input) {
+            model.predict(sample, output);
+            double[] expected = network.predict(sample);
+            for (int i = 0; i < output.length; i++) {
+                difference = Math.max(difference, Math.abs(output[i] - expected[i]));
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "Model file %d bytes, serialized net %d bytes, largest prediction difference %g",
+                Files.size(modelFile), Files.size(serializedFile), difference));
+        Files.deleteIfExists(modelFile);
+        Files.deleteIfExists(serializedFile);
+        Files.deleteIfExists(directory);
+    }
+
+    private static double[][] createData(int samples, int size) {
+        double[][] data = new double[samples][size];
+        for (double[] row : data) {
+            for (int i = 0; i < size; i++) {
+                row[i] = random.nextDouble();
+            }
+        }
+        return data;
+    }
+}
@@ -0,0 +1,234 @@
+package testing;
+
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+import network.Activation;
+import network.ArrayDataset;
+import network.Connection;
+import network.Dataset;
+import network.FloatDataset;
+import network.Layer;
+import network.Net;
+import network.Neuron;
+import network.ParameterException;
+import network.Pruner;
+import network.Relu;
+import network.Sigmoid;
+
+// Benchmarks of the hot paths of the net on random data, so no dataset is needed:
+// Layer.calcInput, Net.predict and one training epoch on the graph and on the array engine, with and without profiling
+// and asynchronous loading, the pruning methods and the dataset loaders. Prints one CSV row per benchmark, redirect it to a file
+// to compare engines or to look for regressions between versions.
+// Arguments, every one a comma separated list of values that are all combined with each other:
+// [layer dimensions like 784x50x50x10] [Relu or Sigmoid] [pruning ratio] [samples] [measured rounds]
+public class NetBenchmarks {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final Random random = new Random(42);
+
+    public static void main(String[] args) throws Exception, ParameterException {
+        String[] dimensionList = (args.length > 0 ? args[0] : "784x50x50x10").split(",");
+        String[] activationList = (args.length > 1 ? args[1] : "Relu,Sigmoid").split(",");
+        String[] ratioList = (args.length > 2 ? args[2] : "0.2").split(",");
+        int samples = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        int rounds = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+
+        Benchmark benchmark = new Benchmark(WARMUP_ROUNDS, rounds);
+        System.out.println(Benchmark.HEADER);
+        for (String dimensions : dimensionList) {
+            int[] layerDimensions = parseDimensions(dimensions);
+            for (String activationName : activationList) {
+                Activation activation = activationName.equals("Relu") ? new Relu() : new Sigmoid();
+                for (String ratio : ratioList) {
+                    String parameters = dimensions + " " + activation + " " + ratio;
+                    runNetBenchmarks(benchmark, parameters, layerDimensions, activation, Double.parseDouble(ratio), samples);
+                }
+            }
+            runLoaderBenchmarks(benchmark, dimensions, layerDimensions, samples);
+        }
+    }
+
+    private static int[] parseDimensions(String dimensions) {
+        String[] sizes = dimensions.split("x");
+        int[] layerDimensions = new int[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            layerDimensions[i] = Integer.parseInt(sizes[i]);
+        }
+        return layerDimensions;
+    }
+
+    private static void runNetBenchmarks(Benchmark benchmark, String parameters, int[] layerDimensions, Activation activation,
+            double ratio, int samples) throws Exception, ParameterException {
+        double[][] input = createData(samples, layerDimensions[0]);
+        double[][] target = createData(samples, layerDimensions[layerDimensions.length - 1]);
+
+        // Layer.calcInput of every layer after the input layer
+        ArrayList<Layer> layers = createLayers(layerDimensions, activation);
+        setInput(layers.get(0), input[0]);
+        for (int i = 1; i < layers.size(); i++) {
+            Layer layer = layers.get(i);
+            benchmark.measure("Layer.calcInput (layer " + i + ")", parameters, 1000, () -> {
+                layer.calcInput();
+                return layer.nodes.get(0).getOutput();
+            });
+        }
+
+        for (boolean arrayEngine : new boolean[]{false, true}) {
+            String engine = arrayEngine ? " (array engine)" : " (graph)";
+            Net network = new Net(layerDimensions, activation, new Sigmoid());
+            network.useArrayEngine = arrayEngine;
+            int[] next = new int[1];
+            benchmark.measure("Net.predict" + engine, parameters, samples, () -> {
+                next[0] = (next[0] + 1) % samples;
+                return network.predict(input[next[0]])[0];
+            });
+            // The same net keeps training, every round is one more epoch
+            benchmark.measure("Net.training epoch" + engine, parameters, 1,
+                    () -> network.training(input, target, 0.01, 1, false));
+        }
+
+        // The cost of timing every phase, compare with the epoch on the array engine above
+        Net profiled = new Net(layerDimensions, activation, new Sigmoid());
+        profiled.useArrayEngine = true;
+        profiled.useProfiling = true;
+        benchmark.measure("Net.training epoch (array engine, profiled)", parameters, 1,
+                () -> profiled.training(input, target, 0.01, 1, false));
+
+        // Shuffled epochs, gathering the samples on the training thread or on the BatchLoader
+        Dataset data = new ArrayDataset(input, target);
+        for (boolean asyncLoading : new boolean[]{false, true}) {
+            Net shuffled = new Net(layerDimensions, activation, new Sigmoid());
+            shuffled.useArrayEngine = true;
+            shuffled.useAsyncLoading = asyncLoading;
+            benchmark.measure("Net.training epoch (array engine, shuffled" + (asyncLoading ? ", async loading)" : ")"),
+                    parameters, 1, () -> shuffled.training(data, 0.01, 1, true));
+        }
+
+        // Building a new net against restoring the trained one in place, both draw every weight
+        benchmark.measure("new Net", parameters, 1,
+                () -> new Net(layerDimensions, activation, new Sigmoid()).getNumberOfConnections());
+        benchmark.measure("Net.reset", parameters, 1, () -> {
+            profiled.reset();
+            return profiled.getNumberOfConnections();
+        });
+
+        // Every round prunes a new graph with statistics from one pass over the data
+        Pruner pruner = new Pruner();
+        pruner.setRatio(ratio);
+        ArrayList<Layer> hiddenLayers = new ArrayList<>();
+        ArrayList<Connection> connections = new ArrayList<>();
+        Benchmark.Setup prepare = () -> {
+            ArrayList<Layer> graph = createLayers(layerDimensions, activation);
+            for (int sample = 0; sample < Math.min(samples, 100); sample++) {
+                setInput(graph.get(0), input[sample]);
+                for (int i = 1; i < graph.size(); i++) {
+                    graph.get(i).calcInput();
+                    // Stands in for the weight updates of training, which the stability pruning needs
+                    for (Neuron node : graph.get(i).nodes) {
+                        for (Connection connection : node.incoming) {
+                            connection.setWeight(connection.getWeight() + 0.01 * random.nextGaussian());
+                        }
+                    }
+                }
+            }
+            hiddenLayers.clear();
+            hiddenLayers.addAll(graph.subList(1, graph.size() - 1));
+            connections.clear();
+            for (Layer layer : graph) {
+                for (Neuron node : layer.nodes) {
+                    connections.addAll(node.incoming);
+                }
+            }
+        };
+        benchmark.measure("Pruner.weightImpactPruning", parameters, 1, prepare,
+                () -> pruner.weightImpactPruning(hiddenLayers, connections).size());
+        benchmark.measure("Pruner.weightStabilityPruning", parameters, 1, prepare,
+                () -> pruner.weightStabilityPruning(hiddenLayers, connections).size());
+        benchmark.measure("Pruner.activationPruning", parameters, 1, prepare,
+                () -> pruner.activationPruning(hiddenLayers, connections, activation).size());
+    }
+
+    private static void runLoaderBenchmarks(Benchmark benchmark, String parameters, int[] layerDimensions, int samples)
+            throws Exception {
+        int inputSize = layerDimensions[0];
+        int targetSize = layerDimensions[layerDimensions.length - 1];
+        double[][] input = createData(samples, inputSize);
+        double[][] target = createData(samples, targetSize);
+        double[] inputBuffer = new double[inputSize];
+        double[] targetBuffer = new double[targetSize];
+
+        benchmark.measure("FloatDataset.of", parameters, 1, () -> FloatDataset.of(input, target).size());
+
+        // MNIST shaped CSV file with a label and one byte per input
+        Path directory = Files.createTempDirectory("benchmark");
+        Path csvFile = directory.resolve("data.csv");
+        Path binaryFile = directory.resolve("data.bin");
+        try (PrintWriter out = new PrintWriter(csvFile.toFile())) {
+            for (int sample = 0; sample < samples; sample++) {
+                StringBuilder line = new StringBuilder().append(random.nextInt(10));
+                for (int i = 0; i < inputSize; i++) {
+                    line.append(',').append(random.nextInt(256));
+                }
+                out.println(line);
+            }
+        }
+        benchmark.measure("MnistDataset.convert", parameters, 1, () -> {
+            MnistDataset.convert(csvFile, binaryFile);
+            return Files.size(binaryFile);
+        });
+        benchmark.measure("MnistDataset.open and read", parameters, 1, () -> {
+            Dataset data = MnistDataset.open(binaryFile, samples, 255);
+            double sum = 0;
+            for (int sample = 0; sample < data.size(); sample++) {
+                data.getInput(sample, inputBuffer, 0);
+                data.getTarget(sample, targetBuffer, 0);
+                sum += inputBuffer[0] + targetBuffer[0];
+            }
+            return sum;
+        });
+        Files.deleteIfExists(csvFile);
+        Files.deleteIfExists(binaryFile);
+        Files.deleteIfExists(directory);
+    }
+
+    private static double[][] createData(int samples, int size) {
+        double[][] data = new double[samples][size];
+        for (double[] row : data) {
+            for (int i = 0; i < size; i++) {
+                row[i] = random.nextDouble();
+            }
+        }
+        return data;
+    }
+
+    // Fully connected layers like the ones of Net, with a Sigmoid output layer
+    private static ArrayList<Layer> createLayers(int[] layerDimensions, Activation activation) {
+        ArrayList<Layer> layers = new ArrayList<>();
+        for (int i = 0; i < layerDimensions.length; i++) {
+            Layer layer = new Layer();
+            Activation layerActivation = i == 0 || i == layerDimensions.length - 1 ? new Sigmoid() : activation;
+            for (int j = 0; j < layerDimensions[i]; j++) {
+                Neuron node = new Neuron(layerActivation, -1);
+                if (i > 0) {
+                    for (Neuron previousNode : layers.get(i - 1).nodes) {
+                        Connection connection = new Connection(previousNode, node);
+                        previousNode.outgoing.add(connection);
+                        node.incoming.add(connection);
+                    }
+                }
+                layer.nodes.add(node);
+            }
+            layers.add(layer);
+        }
+        return layers;
+    }
+
+    private static void setInput(Layer inputLayer, double[] input) {
+        for (int i = 0; i < input.length; i++) {
+            inputLayer.nodes.get(i).setOutput(input[i]);
+        }
+    }
+}
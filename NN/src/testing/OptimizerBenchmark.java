@@ -0,0 +1,98 @@
+package testing;
+
+import java.io.IOException;
+import java.util.Locale;
+import network.Activation;
+import network.Adam;
+import network.Dataset;
+import network.Initializer;
+import network.Momentum;
+import network.Nesterov;
+import network.Net;
+import network.Optimizer;
+import network.ParameterException;
+import network.Pruner;
+import network.Relu;
+import network.Sgd;
+import network.Sigmoid;
+
+// Time to accuracy of the optimizers on the setups of Experiment: every optimizer trains the same net from the
+// same seed epoch after epoch until the error on the test data reaches the target. Only training is timed,
+// the test after every epoch is not. Prints one CSV row per optimizer and setup.
+// MNIST uses its CSV files if they are present, otherwise noisy copies of ten random prototype images.
+// Arguments: [MNIST, lin or both] [target test error, a comma separated pair for MNIST and lin] [maximum epochs]
+// [pruning ratio, 0 trains without pruning]
+public class OptimizerBenchmark {
+
+    private static final long SEED = 42;
+    private static final String HEADER = "Dataset,Optimizer,Learning rate,Epochs,Time to target (ms),Test error,Reached";
+
+    public static void main(String[] args) throws Exception, ParameterException {
+        String setups = args.length > 0 ? args[0] : "both";
+        String[] targets = (args.length > 1 ? args[1] : "0.05,0.01").split(",");
+        int maxEpochs = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        double pruningRatio = args.length > 3 ? Double.parseDouble(args[3]) : 0;
+
+        System.out.println(HEADER);
+        if (!setups.equals("lin")) {
+            Dataset training;
+            Dataset test;
+            try {
+                training = MnistDataset.load("mnist_train.csv", 30000, 255);
+                test = MnistDataset.load("mnist_test.csv", 10000, 255);
+            } catch (IOException ex) {
+                System.err.println("MNIST not available, using synthetic images: " + ex.getMessage());
+                double[][] prototypes = QuantizationBenchmark.createPrototypes();
+                training = QuantizationBenchmark.createImages(prototypes, 30000);
+                test = QuantizationBenchmark.createImages(prototypes, 10000);
+            }
+            // Per-sample rates tuned so none of the optimizers diverges
+            run("MNIST", new int[]{784, 50, 50, 10}, new Relu(), training, test, false, Double.parseDouble(targets[0]),
+                    maxEpochs, pruningRatio, new double[]{0.01, 0.001, 0.001, 0.0005});
+        }
+        if (!setups.equals("MNIST")) {
+            Dataset training = Experiment.createExampleData(10000, "lin");
+            Dataset test = Experiment.createExampleData(10000, "lin");
+            run("lin", new int[]{1, 10, 10, 10, 1}, new Sigmoid(), training, test, true,
+                    Double.parseDouble(targets[targets.length - 1]), maxEpochs, pruningRatio,
+                    new double[]{0.05, 0.005, 0.005, 0.001});
+        }
+    }
+
+    // learningRates holds the rate of SGD, momentum, Nesterov and Adam
+    private static void run(String name, int[] layerDimensions, Activation hiddenLayerActivation, Dataset training,
+            Dataset test, boolean shuffle, double target, int maxEpochs, double pruningRatio, double[] learningRates)
+            throws ParameterException {
+        Optimizer[] optimizers = {new Sgd(), new Momentum(0.9), new Nesterov(0.9), new Adam()};
+        // One epoch with every optimizer first, so the first one measured does not pay for the JIT
+        for (int i = 0; i < optimizers.length; i++) {
+            Net warmup = new Net(layerDimensions, hiddenLayerActivation, new Sigmoid(), new Pruner());
+            warmup.useArrayEngine = true;
+            warmup.setOptimizer(optimizers[i]);
+            warmup.training(training, learningRates[i], 1, shuffle);
+        }
+        for (int i = 0; i < optimizers.length; i++) {
+            Pruner pruner = new Pruner();
+            if (pruningRatio > 0) {
+                pruner.setRatio(pruningRatio);
+            }
+            Net network = new Net(layerDimensions, hiddenLayerActivation, new Sigmoid(), pruner, Initializer.UNIFORM, SEED);
+            network.useArrayEngine = true;
+            network.useWeightImpactPruning = pruningRatio > 0;
+            network.setOptimizer(optimizers[i]);
+
+            long nanos = 0;
+            int epochs = 0;
+            double error = network.measureErrorOnTestData(test);
+            while (error > target && epochs < maxEpochs) {
+                long startTime = System.nanoTime();
+                network.training(training, learningRates[i], 1, shuffle);
+                nanos += System.nanoTime() - startTime;
+                epochs++;
+                error = network.measureErrorOnTestData(test);
+            }
+            System.out.println(String.format(Locale.ROOT, "%s,%s,%s,%d,%.0f,%.6f,%b", name, optimizers[i], learningRates[i],
+                    epochs, nanos / 1e6, error, error <= target));
+        }
+    }
+}
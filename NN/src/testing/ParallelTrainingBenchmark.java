@@ -0,0 +1,55 @@
+package testing;
+
+import java.util.Random;
+import network.Net;
+import network.ParameterException;
+import network.Relu;
+import network.Sigmoid;
+
+// Compares single-threaded mini-batch training with the synchronous and the Hogwild data-parallel mode.
+// Runs on random MNIST shaped data, so no dataset is needed. Arguments: [threads] [batch size] [epochs]
+public class ParallelTrainingBenchmark {
+
+    public static void main(String[] args) throws ParameterException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int epochs = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        int[] layerDimensions = new int[]{784, 50, 50, 10};
+        int sampleSize = 10000;
+        double[][] input = new double[sampleSize][layerDimensions[0]];
+        double[][] target = new double[sampleSize][layerDimensions[layerDimensions.length - 1]];
+        Random random = new Random(42);
+        for (int i = 0; i < sampleSize; i++) {
+            for (int j = 0; j < input[i].length; j++) {
+                input[i][j] = random.nextDouble();
+            }
+            target[i][random.nextInt(target[i].length)] = 1;
+        }
+
+        double singleThreaded = run("Single thread", layerDimensions, input, target, 1, false, batchSize, epochs);
+        double synchronous = run("Synchronous", layerDimensions, input, target, threads, false, batchSize, epochs);
+        double hogwild = run("Hogwild", layerDimensions, input, target, threads, true, batchSize, epochs);
+
+        System.out.println("Speedup synchronous (" + threads + " threads): " + singleThreaded / synchronous);
+        System.out.println("Speedup Hogwild (" + threads + " threads): " + singleThreaded / hogwild);
+    }
+
+    private static double run(String name, int[] layerDimensions, double[][] input, double[][] target, int threads,
+            boolean hogwild, int batchSize, int epochs) throws ParameterException {
+        Net network = new Net(layerDimensions, new Relu(), new Sigmoid());
+        network.useArrayEngine = true;
+        network.useHogwild = hogwild;
+        network.setTrainingThreads(threads);
+
+        // Warmup
+        network.training(input, target, 0.01, 1, false, batchSize);
+
+        long startTime = System.nanoTime();
+        network.training(input, target, 0.01, epochs, false, batchSize);
+        double duration = (System.nanoTime() - startTime) / 1e6;
+        double error = network.measureErrorOnTestData(input, target);
+        System.out.println(name + ": " + duration + " ms, output error " + error);
+        return duration;
+    }
+}
@@ -0,0 +1,121 @@
+package testing;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+import network.ArrayDataset;
+import network.Dataset;
+import network.Net;
+import network.ParameterException;
+import network.Pruner;
+import network.QuantizedModel;
+import network.Relu;
+import network.Sigmoid;
+
+// Trains and prunes a 784x50x50x10 net, quantizes it to int8 weights and compares error, accuracy, weight memory
+// and batch prediction time of the quantized model with the double precision net on the array engine.
+// Uses MNIST if its CSV files are present, otherwise noisy copies of ten random prototype images.
+// Arguments: [epochs, every one ends with a weight impact pruning] [training samples] [measured rounds]
+public class QuantizationBenchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int CALIBRATION_SAMPLES = 1000;
+    private static final int TEST_SAMPLES = 10000;
+    private static final Random random = new Random(42);
+
+    public static void main(String[] args) throws Exception, ParameterException {
+        int epochs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int trainingSamples = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        Dataset training;
+        Dataset test;
+        try {
+            training = MnistDataset.load("mnist_train.csv", trainingSamples, 255);
+            test = MnistDataset.load("mnist_test.csv", TEST_SAMPLES, 255);
+        } catch (IOException ex) {
+            System.err.println("MNIST not available, using synthetic images: " + ex.getMessage());
+            double[][] prototypes = createPrototypes();
+            training = createImages(prototypes, trainingSamples);
+            test = createImages(prototypes, TEST_SAMPLES);
+        }
+
+        Net network = new Net(new int[]{784, 50, 50, 10}, new Relu(), new Sigmoid(), new Pruner());
+        network.useArrayEngine = true;
+        network.useWeightImpactPruning = true;
+        network.training(training, 0.01, epochs, true);
+        QuantizedModel model = QuantizedModel.quantize(network, training, CALIBRATION_SAMPLES);
+
+        double[][] inputs = new double[test.size()][test.getInputSize()];
+        for (int sample = 0; sample < inputs.length; sample++) {
+            test.getInput(sample, inputs[sample], 0);
+        }
+        double doubleError = network.measureErrorOnTestData(test);
+        double quantizedError = model.measureErrorOnTestData(test);
+        double doubleAccuracy = getAccuracy(network.predictBatch(inputs), test);
+        double quantizedAccuracy = getAccuracy(model.predictBatch(inputs), test);
+
+        String parameters = "784x50x50x10 " + model.getNumberOfConnections() + " connections";
+        Benchmark benchmark = new Benchmark(WARMUP_ROUNDS, rounds);
+        System.out.println(Benchmark.HEADER);
+        double doubleTime = benchmark.measure("Net.predictBatch", parameters, 1,
+                () -> network.predictBatch(inputs)[0][0]).getMean();
+        double quantizedTime = benchmark.measure("QuantizedModel.predictBatch", parameters, 1,
+                () -> model.predictBatch(inputs)[0][0]).getMean();
+
+        System.out.println(String.format(Locale.ROOT, "double: test error %.6f, accuracy %.4f, weights %d bytes",
+                doubleError, doubleAccuracy, 8L * network.getNumberOfConnections()));
+        System.out.println(String.format(Locale.ROOT, "int8:   test error %.6f, accuracy %.4f, weights %d bytes",
+                quantizedError, quantizedAccuracy, (long) model.getNumberOfConnections()));
+        System.out.println(String.format(Locale.ROOT, "error difference %+.6f, accuracy difference %+.4f, speedup %.2f",
+                quantizedError - doubleError, quantizedAccuracy - doubleAccuracy, doubleTime / quantizedTime));
+    }
+
+    // Share of samples whose largest output is the one of the largest target
+    private static double getAccuracy(double[][] outputs, Dataset data) {
+        double[] target = new double[data.getTargetSize()];
+        int correct = 0;
+        for (int sample = 0; sample < outputs.length; sample++) {
+            data.getTarget(sample, target, 0);
+            if (argmax(outputs[sample]) == argmax(target)) {
+                correct++;
+            }
+        }
+        return (double) correct / outputs.length;
+    }
+
+    private static int argmax(double[] values) {
+        int index = 0;
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] > values[index]) {
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    // Also used by OptimizerBenchmark when MNIST is missing
+    static double[][] createPrototypes() {
+        double[][] prototypes = new double[10][784];
+        for (double[] prototype : prototypes) {
+            for (int i = 0; i < prototype.length; i++) {
+                prototype[i] = random.nextDouble() < 0.2 ? random.nextDouble() : 0;
+            }
+        }
+        return prototypes;
+    }
+
+    static Dataset createImages(double[][] prototypes, int samples) {
+        double[][] inputs = new double[samples][];
+        double[][] targets = new double[samples][prototypes.length];
+        for (int sample = 0; sample < samples; sample++) {
+            int label = random.nextInt(prototypes.length);
+            inputs[sample] = new double[prototypes[label].length];
+            for (int i = 0; i < inputs[sample].length; i++) {
+                inputs[sample][i] = Math.min(1, Math.max(0, prototypes[label][i] + 0.3 * random.nextGaussian()));
+            }
+            targets[sample][label] = 1;
+        }
+        return new ArrayDataset(inputs, targets);
+    }
+}
@@ -0,0 +1,233 @@
+package testing;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import network.TrainingProfile;
+
+// Streams the results of an experiment to a CSV file with one row per finished training iteration
+// and keeps only running statistics per training iteration instead of every single result.
+// Rows are written through a buffer that is flushed every FLUSH_ROWS rows, every FLUSH_INTERVAL and
+// after every repetition, so a crash loses at most the repetitions that were still running.
+// An existing file is resumed: finished repetitions are read back into the statistics and skipped,
+// rows of unfinished repetitions are dropped. Likewise the statistics only take the values of a running repetition
+// once it finishes with all its training iterations, so a repetition that failed midway is left out of them.
+// Every row ends with the TrainingProfile of its training iteration, empty where no profile was recorded.
+public class ResultsSink {
+
+    // Files written before the profile columns were added are still resumed
+    private static final String LEGACY_HEADER = "Repetition,Training iteration,Output error,Duration (Training),Duration (Prediction),Number of connections";
+    private static final int LEGACY_COLUMNS = 6;
+    static final String HEADER = LEGACY_HEADER + "," + TrainingProfile.getCsvHeader();
+    private static final int COLUMNS = LEGACY_COLUMNS + TrainingProfile.getCsvColumns();
+    private static final String NO_PROFILE = ",".repeat(TrainingProfile.getCsvColumns());
+    private static final int FLUSH_ROWS = 100;
+    private static final long FLUSH_INTERVAL = 5_000_000_000L;
+
+    private Path file;
+    private final int repetitions;
+    private final int trainingIterations;
+
+    private final RunningStatistics[] outputErrors;
+    private final RunningStatistics[] trainingDurations;
+    private final RunningStatistics[] predictionDurations;
+    private final RunningStatistics[] numbersOfConnections;
+    private final boolean[] finishedRepetitions;
+    // Per running repetition and training iteration: output error, training duration, prediction duration and
+    // number of connections, null where nothing was added yet
+    private final double[][][] pendingValues;
+
+    private BufferedWriter writer;
+    private int unflushedRows;
+    private long lastFlush;
+
+    // Only aggregates the results in memory
+    public ResultsSink(int repetitions, int trainingIterations) {
+        this.repetitions = repetitions;
+        this.trainingIterations = trainingIterations;
+        this.outputErrors = createStatistics(trainingIterations);
+        this.trainingDurations = createStatistics(trainingIterations);
+        this.predictionDurations = createStatistics(trainingIterations);
+        this.numbersOfConnections = createStatistics(trainingIterations);
+        this.finishedRepetitions = new boolean[repetitions];
+        this.pendingValues = new double[repetitions][][];
+    }
+
+    public ResultsSink(Path file, int repetitions, int trainingIterations) throws IOException {
+        this(repetitions, trainingIterations);
+        this.file = file;
+        if (Files.exists(file)) {
+            resume();
+        }
+        writer = Files.newBufferedWriter(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (Files.size(file) == 0) {
+            writer.write(HEADER);
+            writer.newLine();
+        }
+        writer.flush();
+        lastFlush = System.nanoTime();
+    }
+
+    private static RunningStatistics[] createStatistics(int length) {
+        RunningStatistics[] statistics = new RunningStatistics[length];
+        for (int i = 0; i < length; i++) {
+            statistics[i] = new RunningStatistics();
+        }
+        return statistics;
+    }
+
+    // Reads the finished repetitions of an earlier run and rewrites the file without the unfinished ones
+    private void resume() throws IOException {
+        List<List<String>> rows = new ArrayList<>();
+        for (int i = 0; i < repetitions; i++) {
+            rows.add(new ArrayList<>());
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line = reader.readLine();
+            boolean legacy = LEGACY_HEADER.equals(line);
+            if (line != null && !legacy && !line.equals(HEADER)) {
+                throw new IOException(file + " is not a results file");
+            }
+            line = reader.readLine();
+            while (line != null) {
+                String[] entries = line.split(",", -1);
+                if (legacy && entries.length == LEGACY_COLUMNS) {
+                    line += NO_PROFILE;
+                    entries = line.split(",", -1);
+                }
+                // The last line may have been cut off by a crash
+                if (entries.length == COLUMNS) {
+                    try {
+                        int repetition = Integer.parseInt(entries[0]);
+                        int iteration = Integer.parseInt(entries[1]);
+                        if (repetition >= 0 && repetition < repetitions && iteration == rows.get(repetition).size()) {
+                            rows.get(repetition).add(line);
+                        }
+                    } catch (NumberFormatException ex) {
+                        // Incomplete row, ignored like the unfinished repetition it belongs to
+                    }
+                }
+                line = reader.readLine();
+            }
+        }
+
+        Path temporaryFile = Paths.get(file + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temporaryFile)) {
+            out.write(HEADER);
+            out.newLine();
+            for (int repetition = 0; repetition < repetitions; repetition++) {
+                if (rows.get(repetition).size() < trainingIterations) {
+                    continue;
+                }
+                for (String line : rows.get(repetition)) {
+                    String[] entries = line.split(",");
+                    aggregate(Integer.parseInt(entries[1]), Double.parseDouble(entries[2]), Double.parseDouble(entries[3]),
+                            Double.parseDouble(entries[4]), Integer.parseInt(entries[5]));
+                    out.write(line);
+                    out.newLine();
+                }
+                finishedRepetitions[repetition] = true;
+            }
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void aggregate(int iteration, double outputError, double trainingDuration, double predictionDuration,
+            int numberOfConnections) {
+        outputErrors[iteration].add(outputError);
+        trainingDurations[iteration].add(trainingDuration);
+        predictionDurations[iteration].add(predictionDuration);
+        numbersOfConnections[iteration].add(numberOfConnections);
+    }
+
+    public synchronized boolean isFinished(int repetition) {
+        return finishedRepetitions[repetition];
+    }
+
+    public synchronized int getNumberOfFinishedRepetitions() {
+        int finished = 0;
+        for (boolean repetition : finishedRepetitions) {
+            if (repetition) {
+                finished++;
+            }
+        }
+        return finished;
+    }
+
+    public synchronized void add(int repetition, int iteration, double outputError, double trainingDuration,
+            double predictionDuration, int numberOfConnections) throws IOException {
+        add(repetition, iteration, outputError, trainingDuration, predictionDuration, numberOfConnections, null);
+    }
+
+    public synchronized void add(int repetition, int iteration, double outputError, double trainingDuration,
+            double predictionDuration, int numberOfConnections, TrainingProfile profile) throws IOException {
+        if (pendingValues[repetition] == null) {
+            pendingValues[repetition] = new double[trainingIterations][];
+        }
+        pendingValues[repetition][iteration] = new double[]{outputError, trainingDuration, predictionDuration,
+                numberOfConnections};
+        if (writer == null) {
+            return;
+        }
+        writer.write(repetition + "," + iteration + "," + outputError + "," + trainingDuration + "," + predictionDuration + ","
+                + numberOfConnections + (profile == null ? NO_PROFILE : "," + profile.toCsv()));
+        writer.newLine();
+        unflushedRows++;
+        if (unflushedRows >= FLUSH_ROWS || System.nanoTime() - lastFlush >= FLUSH_INTERVAL) {
+            flush();
+        }
+    }
+
+    // Aggregates the values of the repetition if all its training iterations were added, the same as resume does.
+    // Closes the file once every repetition is finished.
+    public synchronized void finishRepetition(int repetition) throws IOException {
+        double[][] values = pendingValues[repetition];
+        pendingValues[repetition] = null;
+        boolean complete = values != null;
+        for (int iteration = 0; complete && iteration < trainingIterations; iteration++) {
+            complete = values[iteration] != null;
+        }
+        for (int iteration = 0; complete && iteration < trainingIterations; iteration++) {
+            aggregate(iteration, values[iteration][0], values[iteration][1], values[iteration][2],
+                    (int) values[iteration][3]);
+        }
+        finishedRepetitions[repetition] = true;
+        if (writer == null) {
+            return;
+        }
+        flush();
+        if (getNumberOfFinishedRepetitions() == repetitions) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private void flush() throws IOException {
+        writer.flush();
+        unflushedRows = 0;
+        lastFlush = System.nanoTime();
+    }
+
+    public RunningStatistics getOutputErrors(int iteration) {
+        return outputErrors[iteration];
+    }
+
+    public RunningStatistics getTrainingDurations(int iteration) {
+        return trainingDurations[iteration];
+    }
+
+    public RunningStatistics getPredictionDurations(int iteration) {
+        return predictionDurations[iteration];
+    }
+
+    public RunningStatistics getNumbersOfConnections(int iteration) {
+        return numbersOfConnections[iteration];
+    }
+}
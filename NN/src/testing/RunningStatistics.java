@@ -0,0 +1,29 @@
+package testing;
+
+// Mean and variance of a stream of values, updated with Welford's algorithm so no values have to be kept
+public class RunningStatistics {
+
+    private long count;
+    private double mean;
+    private double squaredDistances;
+
+    public void add(double value) {
+        count++;
+        double distance = value - mean;
+        mean += distance / count;
+        squaredDistances += distance * (value - mean);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    // Sample variance, 0 for less than two values
+    public double getVariance() {
+        return count > 1 ? squaredDistances / (count - 1) : 0;
+    }
+}
@@ -0,0 +1,121 @@
+package testing;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import network.LatencyHistogram;
+import network.Model;
+import server.InferenceClient;
+import server.InferenceServer;
+
+// Load generator for the InferenceServer. Every connection runs on its own virtual thread and sends requests with
+// random inputs in a closed loop, first to warm up, then measured. For every number of connections it prints the
+// throughput and latency percentiles seen by the clients and the statistics of the server.
+// Arguments: <host:port or model file> [connections, comma separated] [requests per connection] [inputs]
+// [maximum batch size] [maximum wait in microseconds]
+// With a model file the server runs in this JVM on a free port with the given batching and the inputs of the model,
+// otherwise the last two arguments are ignored.
+public class ServerLoadGenerator {
+
+    private static final int WARMUP_REQUESTS = 500;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Arguments: <host:port or model file> [connections] [requests per connection] [inputs]"
+                    + " [maximum batch size] [maximum wait in microseconds]");
+            return;
+        }
+        String[] connectionList = (args.length > 1 ? args[1] : "1,4,16,64").split(",");
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        int inputSize = args.length > 3 ? Integer.parseInt(args[3]) : 784;
+        int maxBatchSize = args.length > 4 ? Integer.parseInt(args[4]) : 64;
+        long maxWaitMicros = args.length > 5 ? Long.parseLong(args[5]) : 200;
+
+        String host = "localhost";
+        int port;
+        InferenceServer server = null;
+        Path modelFile = Paths.get(args[0]);
+        if (Files.exists(modelFile)) {
+            Model model = Model.load(modelFile);
+            inputSize = model.getDimension()[0];
+            server = new InferenceServer(model, 0, maxBatchSize, maxWaitMicros);
+            port = server.getPort();
+        } else {
+            String[] address = args[0].split(":");
+            host = address[0];
+            port = Integer.parseInt(address[1]);
+        }
+
+        for (String connections : connectionList) {
+            run(host, port, Integer.parseInt(connections), requests, inputSize);
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    private static void run(String host, int port, int connections, int requests, int inputSize) throws Exception {
+        ArrayList<Future<LatencyHistogram>> results = new ArrayList<>();
+        CountDownLatch warmedUp = new CountDownLatch(connections);
+        CountDownLatch start = new CountDownLatch(1);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+                InferenceClient statistics = new InferenceClient(host, port)) {
+            for (int connection = 0; connection < connections; connection++) {
+                long seed = connection;
+                results.add(executor.submit(() -> runConnection(host, port, requests, inputSize, seed, warmedUp, start)));
+            }
+            // Warmup requests are not part of the statistics, the measured ones start at the same time
+            warmedUp.await();
+            statistics.takeStatistics();
+            long startTime = System.nanoTime();
+            start.countDown();
+            LatencyHistogram latencies = new LatencyHistogram();
+            for (Future<LatencyHistogram> result : results) {
+                latencies.add(result.get());
+            }
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            System.out.println(String.format(Locale.ROOT, "%d connections: %.0f requests/s, client latency %s",
+                    connections, latencies.getCount() / seconds, latencies));
+            System.out.println("  server: " + statistics.takeStatistics());
+        }
+    }
+
+    private static LatencyHistogram runConnection(String host, int port, int requests, int inputSize, long seed,
+            CountDownLatch warmedUp, CountDownLatch start) throws IOException, InterruptedException {
+        Random random = new Random(seed);
+        double[] input = new double[inputSize];
+        LatencyHistogram latencies = new LatencyHistogram();
+        boolean warm = false;
+        try (InferenceClient client = new InferenceClient(host, port)) {
+            for (int request = 0; request < WARMUP_REQUESTS + requests; request++) {
+                if (request == WARMUP_REQUESTS) {
+                    warm = true;
+                    warmedUp.countDown();
+                    start.await();
+                }
+                for (int i = 0; i < inputSize; i++) {
+                    input[i] = random.nextDouble();
+                }
+                long startTime = System.nanoTime();
+                client.predict(input);
+                if (request >= WARMUP_REQUESTS) {
+                    latencies.record(System.nanoTime() - startTime);
+                }
+            }
+        } finally {
+            // A failed connection must not keep the others waiting
+            if (!warm) {
+                warmedUp.countDown();
+            }
+        }
+        return latencies;
+    }
+}